@@ -1,6 +1,232 @@
+import java.io.*;
+import java.net.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.function.*;
+import java.util.stream.*;
 
 public class ReversiAI {
+    static HashMap<String, String> options = new HashMap<>();  // the "--name value" options from the command line
+    static final String TABLE_4X4 = "reversi4x4.tbl";          // the solved 4x4 game, made the first time it's needed
+    static final String WEIGHTS = "reversi.weights";            // the tuned 8x8 pattern weights, used if the file is there
+    static final String POSITIONS = "reversi.positions";        // the self-play positions the weights are tuned on
+    static final String BOOK = "reversi.book";                  // the 8x8 opening book, used if the file is there
+    static final String GAMES = "reversi.games";                // every 8x8 game the bot plays is added to it
+    static final String PROBCUT = "reversi.probcut";            // the ProbCut parameters, used if the file is there
+
+    /** option method
+     * - finds a number option from the command line
+     * @param name the name of the option, without the "--"
+     * @param defaultValue the value if the option wasn't given
+     * */
+    static int option (String name, int defaultValue){
+        String value = options.get(name);
+        return value == null || value.isEmpty() ? defaultValue : Integer.parseInt(value);
+    }
+
+    /** randomPositions method
+     * - plays random moves from the start of an 8x8 game, for tools that need a set of positions
+     * @param count the number of positions
+     * @param plies the number of moves to play for each position
+     * @param seed the seed of the random moves, so the positions are the same every time
+     * @return nodes whose board has the color to move as both the current player and the bot color
+     * */
+    static ArrayList<Node> randomPositions (int count, int plies, long seed){
+        Random random = new Random(seed);
+        ArrayList<Node> ret = new ArrayList<>();
+        while (ret.size() < count){
+            BitBoard b = new BitBoard(true);
+            int color = 0;
+            for (int i = 0; i < plies; i++){
+                long moves = b.possibleMoves(color);
+                if (moves == 0){
+                    color = (color+1)%2;
+                    moves = b.possibleMoves(color);
+                    if (moves == 0)
+                        break;
+                }
+                int[] list = new int[64];
+                int n = BitBoard.moveList(moves, list);
+                b.makeMove(list[random.nextInt(n)], color);
+                color = (color+1)%2;
+            }
+            // games that ended early and positions where the side to move has to pass aren't useful
+            if (b.possibleMoves(color) != 0)
+                ret.add(new Node(b.toBoard(color, color)));
+        }
+        return ret;
+    }
+
+    /** runTool method
+     * - runs the tool given in the options instead of a game
+     * */
+    static void runTool (){
+        if (options.containsKey("smp-bench")){
+            LazySMP.benchmark(option("smp-bench", Runtime.getRuntime().availableProcessors()), option("depth", 9));
+        }
+        else if (options.containsKey("ybw-bench")){
+            YBWSearch.benchmark(option("ybw-bench", Runtime.getRuntime().availableProcessors()), option("depth", 8));
+        }
+        else if (options.containsKey("endgame-bench")){
+            EndgameSolver.benchmark(option("endgame-bench", 20));
+        }
+        else if (options.containsKey("bench")){
+            new Benchmark(options.get("bench"), option("warmup", 3), option("iterations", 5), option("time", 1000))
+                    .run(option("depth", 6));
+        }
+        else if (options.containsKey("pvs-bench")){
+            new Benchmark("", 0, 0, 0).searchBenchmark(option("pvs-bench", 8));
+        }
+        else if (options.containsKey("perft")){
+            Perft.run(option("perft", 8));
+        }
+        else if (options.containsKey("perft-check")){
+            if (!Perft.check(option("perft-check", 6)))
+                System.exit(1);
+        }
+        else if (options.containsKey("solve-4x4")){
+            String file = options.get("solve-4x4");
+            try {
+                Solved4x4.buildTool(Paths.get(file.isEmpty() ? TABLE_4X4 : file));
+            }
+            catch (IOException e){
+                System.out.println("Could not write the 4x4 table: " + e.getMessage());
+            }
+        }
+        else if (options.containsKey("selfplay")){
+            String file = options.get("selfplay");
+            try {
+                Tuner.generate(Paths.get(file.isEmpty() ? POSITIONS : file), option("games", 1000), option("depth", 4),
+                        option("exact", 14), option("random", 8), option("seed", 1));
+            }
+            catch (IOException | UncheckedIOException e){
+                System.out.println("Could not write the positions: " + e.getMessage());
+            }
+        }
+        else if (options.containsKey("tune")){
+            String file = options.get("tune");
+            try {
+                Tuner.tuneTool(Paths.get(file.isEmpty() ? POSITIONS : file), Paths.get(options.getOrDefault("weights", WEIGHTS)),
+                        option("iterations", 100), option("ridge", 4));
+            }
+            catch (IOException e){
+                System.out.println("Could not tune the weights: " + e.getMessage());
+            }
+        }
+        else if (options.containsKey("book-build")){
+            String file = options.get("book-build");
+            try {
+                OpeningBook.buildTool(Paths.get(file.isEmpty() ? BOOK : file), option("plies", 10), option("depth", 6),
+                        option("width", 3), option("margin", 50));
+            }
+            catch (IOException e){
+                System.out.println("Could not write the opening book: " + e.getMessage());
+            }
+        }
+        else if (options.containsKey("match")){
+            String[] specs = new String[]{options.getOrDefault("engine1", "movetime=100"),
+                    options.getOrDefault("engine2", "movetime=100 eval=simple")};
+            try {
+                new Tournament(specs, option("match", 200), option("concurrency", Runtime.getRuntime().availableProcessors()),
+                        option("plies", 8), option("seed", 1), option("elo0", 0), option("elo1", 10)).run();
+            }
+            catch (InterruptedException e){
+                Thread.currentThread().interrupt();
+            }
+        }
+        else if (options.containsKey("server") || options.containsKey("server-test")){
+            int threads = option("workers", Runtime.getRuntime().availableProcessors());
+            try {
+                if (options.containsKey("server"))
+                    EngineServer.serverTool(option("server", 7242), threads, option("tables", 64), option("hash", 4),
+                            option("movetime", 100));
+                else if (!EngineServer.testTool(option("server-test", 64), option("games", 2), threads, option("tables", 64),
+                        option("hash", 4), option("movetime", 20)))
+                    System.exit(1);
+            }
+            catch (IOException e){
+                System.out.println("Could not run the server: " + e.getMessage());
+            }
+            catch (InterruptedException e){
+                Thread.currentThread().interrupt();
+            }
+        }
+        else if (options.containsKey("analyze")){
+            try {
+                // a time for every position if --movetime is given, otherwise a depth
+                BatchAnalysis.analyzeTool(Paths.get(options.get("analyze")), options.get("output"),
+                        option("threads", Runtime.getRuntime().availableProcessors()),
+                        option("depth", options.containsKey("movetime") ? 60 : 8), option("movetime", 0), option("hash", 16),
+                        options.containsKey("ordered"));
+            }
+            catch (IOException e){
+                // the results may be going to the console, so the error goes to the error stream
+                System.err.println("Could not analyze the positions: " + e.getMessage());
+                System.exit(1);
+            }
+            catch (InterruptedException e){
+                Thread.currentThread().interrupt();
+            }
+        }
+        else if (options.containsKey("replay")){
+            String file = options.get("replay");
+            try {
+                GameRecord.replayTool(Paths.get(file.isEmpty() ? GAMES : file),
+                        !options.containsKey("extract") ? null
+                                : Paths.get(options.get("extract").isEmpty() ? POSITIONS : options.get("extract")));
+            }
+            catch (IOException e){
+                System.out.println("Could not replay the games: " + e.getMessage());
+            }
+        }
+        else if (options.containsKey("probcut-calibrate")){
+            String file = options.get("probcut-calibrate");
+            try {
+                ProbCut.calibrateTool(Paths.get(file.isEmpty() ? POSITIONS : file), Paths.get(options.getOrDefault("probcut", PROBCUT)),
+                        option("samples", 2000), option("depth", 10));
+            }
+            catch (IOException e){
+                System.out.println("Could not calibrate ProbCut: " + e.getMessage());
+            }
+        }
+        else {
+            System.out.println("""
+                    Tools:
+                      --smp-bench [threads] [--depth 9]   Lazy SMP nodes/sec and time-to-depth for 1, 2, 4... threads
+                      --ybw-bench [threads] [--depth 8]   Young Brothers Wait search against the serial search
+                      --endgame-bench [empties]           exact and win/loss/draw solve times, 20 empties by default
+                      --solve-4x4 [file]                  solves every 4x4 position and writes the table file
+                      --bench [name] [--depth 6]          benchmarks as JSON lines (--warmup 3 --iterations 5 --time 1000)
+                      --pvs-bench [depth]                 nodes of alpha-beta, PVS and aspiration windows to depth 8
+                      --perft [depth] [--divide]          counts the leaves of the game tree (--small for 4x4, --side W,
+                                                          --position <16 or 64 squares>, --nobulk)
+                      --perft-check [depth]               checks the BitBoard and the Board against the reference counts
+                      --selfplay [file] [--games 1000]    adds self-play positions to a position file (--depth 4,
+                                                          --exact 14, --random 8, --seed 1)
+                      --tune [file] [--weights file]      fits the pattern weights to a position file (--iterations 100,
+                                                          --ridge 4)
+                      --book-build [file] [--plies 10]    builds the 8x8 opening book by searching every move (--depth 6,
+                                                          --width 3, --margin 50)
+                      --match [games] [--engine1 spec]    plays 2 engines against each other with SPRT (--engine2 spec,
+                                                          --concurrency, --plies 8, --seed 1, --elo0 0, --elo1 10)
+                      --server [port]                     runs the 8x8 engine as a server on localhost:7242 (--workers,
+                                                          --tables 64, --hash 4, --movetime 100)
+                      --server-test [clients]             plays games against a server from 64 clients at once and
+                                                          prints the move times (--games 2, --movetime 20)
+                      --analyze <file> [--output file]    searches every position of a file on every core (--depth 8 or
+                                                          --movetime, --threads, --hash 16, --ordered)
+                      --replay [file] [--extract file]    replays and checks the recorded games, and adds their positions
+                                                          to a position file with --extract
+                      --probcut-calibrate [file]          fits the ProbCut parameters to a position file (--samples 2000,
+                                                          --depth 10, --probcut file)
+                    """);
+        }
+    }
+
     // Board Class
     static class Board {
         int currentPlayer;  // the current move
@@ -454,385 +680,6013 @@ public class ReversiAI {
         }
     }
 
-    // Node Class
-    static class Node {
-        Board state;        // the current state of the Node
-        Node parent;        // the parent of the node
-        String action;      // the action the node went
-        int pathCost;       // the pathCost
+    // BitBoard Class
+    static class BitBoard {
+        long black;         // the black pieces, one bit per square
+        long white;         // the white pieces, one bit per square
+        int size;           // the length of a side of the board, 4 or 8
+        long full;          // a mask with a bit set for every square on the board
+        long notFirst;      // every square except the "a" column, so shifts can't wrap onto the next row
+        long notLast;       // every square except the last column
+        long hash;          // the Zobrist key of the pieces, kept up to date by makeMove and unmakeMove
+        int[] features;     // the PatternEval index of every pattern, null unless enableFeatures was called
 
-        // the initial node set
-        public Node (Board state){
-            this.state = state;
-            this.parent = null;
-            action = "";
-            pathCost = 0;
+        static final String[] COLUMNS = new String[]{"a", "b", "c", "d", "e", "f", "g", "h"};  // the column names
+        static final String[] ROWS = new String[]{"1", "2", "3", "4", "5", "6", "7", "8"};     // the row names
+        static final String[] COLORS = new String[]{"B", "W"};  // the colors of the pieces to be put on the board
+
+        // the row and column steps of the 8 directions, in the same order as Board.adjacent (without the center)
+        static final int[] ROW_STEPS = new int[]{-1, -1, -1, 0, 0, 1, 1, 1};
+        static final int[] COLUMN_STEPS = new int[]{-1, 0, 1, -1, 1, -1, 0, 1};
+
+        // the Zobrist keys: a random number for each color on each square, and one for white to move
+        static final long[][] ZOBRIST = new long[2][64];
+        static final long[] ZOBRIST_FLIP = new long[64];    // both colors of a square, for flipping a piece
+        static final long ZOBRIST_WHITE;
+        static {
+            // a fixed seed so the keys are the same every run
+            SplittableRandom random = new SplittableRandom(242);
+            for (int i = 0; i < 64; i++){
+                ZOBRIST[0][i] = random.nextLong();
+                ZOBRIST[1][i] = random.nextLong();
+                ZOBRIST_FLIP[i] = ZOBRIST[0][i] ^ ZOBRIST[1][i];
+            }
+            ZOBRIST_WHITE = random.nextLong();
         }
 
-        // the deep copy node set
-        public Node (Board state, Node parent, String action, int cost){
-            this.state = state;
-            this.parent = parent;
-            this.action = action;
-            pathCost = cost;
+        /** BitBoard constructor class
+         * - square "a1" is bit 0, "b1" is bit 1 and so on, so a square is row*size + column
+         * - the 4x4 board is packed into the low 16 bits
+         * @param big indicator for if the BitBoard will be 4x4 or 8x8
+         * */
+        public BitBoard (boolean big){
+            setSize(big ? 8 : 4);
+            // the same starting position as the Board class
+            int center = size/2 - 1;
+            black = bit(center, center) | bit(center+1, center+1);
+            white = bit(center, center+1) | bit(center+1, center);
+            hash = computeHash();
         }
-        public String toString(){
-            String ret = "Node Stats:\n";
-            ret += "Node State: \n" + state.toString();
-            if (parent == null)
-                ret += "\nNode Parent: null";
-            else
-                ret += "\nNode Parent: \n" + parent.state.toString();
-            ret += "\nNode action:\n"+action;
-            ret += "\nPath Cost: "+pathCost;
-            return ret;
+
+        /** BitBoard constructor class with a Board as parameter
+         * - converts the String cells of a Board into the two bitboards
+         * @param board the board to convert
+         * */
+        public BitBoard (Board board){
+            setSize(board.board.length);
+            for (int i = 0; i < size; i++){
+                for (int j = 0; j < size; j++){
+                    if (board.board[i][j].equals("B"))
+                        black |= bit(i, j);
+                    else if (board.board[i][j].equals("W"))
+                        white |= bit(i, j);
+                }
+            }
+            hash = computeHash();
         }
-    }
 
-    // miniMax Algorithm class
-    static class algorithm4x4 {
-        int ai;             // the index of the ai's color
-        int opponent;       // the index of the player's color
-        Node initialState;  // the initial state of the algorithm
+        /** BitBoard copy constructor class
+         * @param other the BitBoard to copy
+         * */
+        public BitBoard (BitBoard other){
+            copyFrom(other);
+        }
 
-        // Constructor class
-        public algorithm4x4(Node initialState){
-            this.initialState = initialState;
-            ai = initialState.state.botColor;
-            opponent = initialState.state.playerColor;
+        /** copyFrom method
+         * - copies another BitBoard into this one without allocating anything (except the first time
+         *   features are copied)
+         * @param other the BitBoard to copy
+         * */
+        public void copyFrom (BitBoard other){
+            black = other.black;
+            white = other.white;
+            size = other.size;
+            full = other.full;
+            notFirst = other.notFirst;
+            notLast = other.notLast;
+            hash = other.hash;
+            if (other.features == null)
+                features = null;
+            else {
+                if (features == null)
+                    features = new int[other.features.length];
+                System.arraycopy(other.features, 0, features, 0, features.length);
+            }
         }
 
-        /** isGoal method
-         * - to determine whether the state the function is looking at is a goal state or not
-         * @param state the state we are determining
+        /** enableFeatures method
+         * - works out the PatternEval patterns of an 8x8 board, after this makeMove and unmakeMove keep them
+         *   up to date
          * */
-        public boolean isGoal(Node state){
-            Board board = state.state;
+        public void enableFeatures (){
+            features = PatternEval.indices(black, white);
+        }
 
-            // if neither size has any available moves -> return true
-            if (board.possibleMoves(board, 0).keySet().size() == 0 &&
-                    board.possibleMoves(board, 1).keySet().size() == 0)
-                return true;
+        /** computeHash method
+         * - works out the Zobrist key of the pieces from scratch
+         * */
+        public long computeHash (){
+            return computeHash(black, white);
+        }
 
-            // if there are no more available spaces -> return true
-            return state.state.numSquares(state.state.board, " ") == 0;
+        /** computeHash method
+         * @param black the black pieces
+         * @param white the white pieces
+         * @return the Zobrist key of the pieces
+         * */
+        public static long computeHash (long black, long white){
+            long ret = 0;
+            for (long b = black; b != 0; b &= b - 1)
+                ret ^= ZOBRIST[0][Long.numberOfTrailingZeros(b)];
+            for (long w = white; w != 0; w &= w - 1)
+                ret ^= ZOBRIST[1][Long.numberOfTrailingZeros(w)];
+            return ret;
         }
 
-        /** result method
-         * - to find the result after putting a piece on the board
-         * @param node the state that the program is currently in
-         * @param location the place in which the program wishes to place the piece
-         * @param currentPlayer indication of whom the method is called for
+        /** key method
+         * - the Zobrist key of the position with color to move, for the transposition table
+         * @param color the color to move
          * */
-        public Node result (Node node, String location, int currentPlayer){
-            // tempNode that creates a deep copy of the node to store as a parent
-            Node tempNode = new Node(node.state, node.parent, node.action, node.pathCost);
+        public long key (int color){
+            return color == 0 ? hash : hash ^ ZOBRIST_WHITE;
+        }
 
-            // board instantiation to use the move method in the Board class
-            Board board = new Board(node.state.board, currentPlayer, node.state.botColor);
-            board=new Board(board.move(node.state, location, board.currentPlayer).board, board.currentPlayer, board.botColor);
+        /** setSize method
+         * - helper method for the constructors
+         * - sets the size of the board and the masks that go with it
+         * @param size the length of a side of the board
+         * */
+        private void setSize (int size){
+            this.size = size;
+            full = size == 8 ? -1L : (1L << (size*size)) - 1;
+            notFirst = full;
+            notLast = full;
+            for (int i = 0; i < size; i++){
+                notFirst &= ~bit(i, 0);
+                notLast &= ~bit(i, size-1);
+            }
+        }
 
-            // return the move method
-            return new Node(board, tempNode, location, node.pathCost+1);
+        /** bit method
+         * - helper method to find the bit of a row and a column
+         * */
+        private long bit (int row, int column){
+            return 1L << (row*size + column);
         }
 
-        /** miniMaxSearch method
-         * - to find the correct move after searching the entire tree recursively
-         * @param s the state that the program is currently in
-         * @param possibleMoves a set of all the possible moves the state can possibly move
+        /** discs method
+         * @param color the color of the pieces
+         * @return the bitboard of the pieces of that color
          * */
-        public String miniMaxSearch(Node s, Set<String> possibleMoves) {
-            // filler variables that are to be replaced later
-            int bestValue = -10000;
-            String bestMove = "FILLER";
-            String valueMove = bestValue+","+bestMove;
+        public long discs (int color){
+            return color == 0 ? black : white;
+        }
 
-            // find the maximum possible value to move given the state the program is in and returning it
-            bestMove = maxValue(s, possibleMoves, valueMove);
-            return bestMove;
+        /** empty method
+         * @return the bitboard of the empty squares
+         * */
+        public long empty (){
+            return ~(black | white) & full;
         }
 
-        /** maxValue method
-         * - to find the maximum possible value for the program to move
-         * @param s the state that the program is currently in
-         * @param possibleMoves a set of all the possible moves the state can possibly move
-         * @param valueMove a string comprised of two variables: value and move
+        /** numSquares method
+         * - finds the number of squares on the board that are the desired color
+         * @param color the color that the program is trying to count
          * */
-        public String maxValue (Node s, Set<String> possibleMoves, String valueMove){
-            // if the current state is a goal state, then return the utility value
-            if (isGoal(s)) {
-                return utility(s, s.state.currentPlayer == 0) + "," + valueMove.split(",")[1];
-            }
+        public int numSquares (int color){
+            return Long.bitCount(discs(color));
+        }
 
-            int v = -10000;
-            String[] vM = valueMove.split(",");
-            // for every action in the possible moves the state can make
-            for (String a : possibleMoves){
-                // find the result of the move and get the worst case scenario the opponent can make
-                Node result = result(s, a, ai);
-                String v2a2 = minValue(result, result.state.possibleMoves(result.state, opponent).keySet(), valueMove);
+        /** numSquares method
+         * - finds the number of squares on the board that are the desired piece, like Board.numSquares
+         * @param piece the piece/color that the program is trying to find ("B", "W" or " ")
+         * */
+        public int numSquares (String piece){
+            if (piece.equals("B"))
+                return Long.bitCount(black);
+            if (piece.equals("W"))
+                return Long.bitCount(white);
+            return Long.bitCount(empty());
+        }
 
-                // split up the string and find if the value is better than v
-                String[] vM2 = v2a2.split(",");
-                if (Integer.parseInt(vM2[0]) > v){
-                    // set the values to the best possible value
-                    vM[1] = a;
-                    vM[0] = vM2[0];
-                }
-            }
-            return vM[0]+","+vM[1];
+        /** square method
+         * - finds the square of a location such as "a1" or "h8"
+         * @param location the location on the board
+         * @return the square, or -1 if the location isn't on the board
+         * */
+        public int square (String location){
+            if (location == null || location.length() != 2)
+                return -1;
+            int column = location.charAt(0) - 'a';
+            int row = location.charAt(1) - '1';
+            if (column < 0 || column >= size || row < 0 || row >= size)
+                return -1;
+            return row*size + column;
         }
 
-        /** minValue method
-         * - to find the minimum possible value for the opponent to move (hoping for the worst)
-         * @param s the state that the program is currently in
-         * @param possibleMoves a set of all the possible moves the state can possibly move
-         * @param valueMove a string comprised of two variables: value and move
+        /** location method
+         * - finds the location of a square, the opposite of the square method
+         * @param square the square on the board
          * */
-        public String minValue (Node s, Set<String> possibleMoves, String valueMove){
-            // if the current state is a goal state, then return the utility value
-            if (isGoal(s)) {
-                return utility(s, s.state.currentPlayer == 0) + "," + valueMove.split(",")[1];
-            }
-            int v = 10000;
-            String[] vM = valueMove.split(",");
-            // for every action in the possible moves the state can make
-            for (String a : possibleMoves){
-                // find the result of the move and get the best case move the function can make
-                Node result = result(s, a, opponent);
-                String v2a2 = maxValue(result, result.state.possibleMoves(result.state, ai).keySet(), valueMove);
+        public String location (int square){
+            return COLUMNS[square % size] + ROWS[square / size];
+        }
 
-                // split up the string and find if the value is better than v
-                String[] vM2 = v2a2.split(",");
-                if (Integer.parseInt(vM2[0]) < v){
-                    // set the values to the worst possible value
-                    vM[0] = vM2[0];
-                    vM[1] = a;
-                }
+        /** flips method
+         * - finds the pieces that would be flipped if color placed a piece on square
+         * @param square the square the piece would be placed on
+         * @param color the color of the piece
+         * @return the bitboard of the flipped pieces, 0 if the move isn't legal
+         * */
+        public long flips (int square, int color){
+            return flips(square, discs(color), discs((color+1)%2));
+        }
+
+        /** flips method
+         * @param square the square the piece would be placed on
+         * @param own the pieces of the color that is moving
+         * @param opp the pieces of the opposite color
+         * @return the bitboard of the flipped pieces, 0 if the move isn't legal
+         * */
+        public long flips (int square, long own, long opp){
+            long move = 1L << square;
+            if (((own | opp) & move) != 0)
+                return 0;
+            long ret = 0;
+            ret |= lineUp(move, own & notFirst, opp & notFirst, 1);
+            ret |= lineUp(move, own, opp, size);
+            ret |= lineUp(move, own & notFirst, opp & notFirst, size+1);
+            ret |= lineUp(move, own & notLast, opp & notLast, size-1);
+            ret |= lineDown(move, own & notLast, opp & notLast, 1);
+            ret |= lineDown(move, own, opp, size);
+            ret |= lineDown(move, own & notLast, opp & notLast, size+1);
+            ret |= lineDown(move, own & notFirst, opp & notFirst, size-1);
+            return ret;
+        }
+
+        /** lineUp method
+         * - helper method for flips
+         * - goes in one direction over the opposite pieces until there is something else
+         * @param move the bit of the square the piece is placed on
+         * @param own the pieces of the color that is moving
+         * @param opp the pieces of the opposite color
+         * @param shift the number of bits one step in the direction is
+         * @return the opposite pieces that were gone over if the line ends on one of our own, otherwise 0
+         * */
+        private static long lineUp (long move, long own, long opp, int shift){
+            long line = 0;
+            long x = move << shift;
+            while ((x & opp) != 0){
+                line |= x;
+                x <<= shift;
             }
-            return vM[0]+","+vM[1];
+            return (x & own) != 0 ? line : 0;
         }
 
-        /** utility method
-         * - to return a certain value for when a goal state is reached
-         * @param s the state that the program is currently in
-         * @param black to determine if the piece is black or not
-         * */
-        public int utility  (Node s, boolean black) {
-            // finds the number of black and white squares on the board
-            int whiteSquares = s.state.numSquares(s.state.board, "W");
-            int blackSquares = s.state.numSquares(s.state.board, "B");
-
-            // if the computer wins, it returns 1, if the computer loses -1, if it is a tie, 0
-            if (black && whiteSquares > blackSquares) return -1;
-            if (black && whiteSquares < blackSquares) return 1;
-            if (whiteSquares > blackSquares) return 1;
-            if (whiteSquares < blackSquares) return -1;
-            return 0;
+        /** lineDown method
+         * - the same as lineUp, but going the other way
+         * */
+        private static long lineDown (long move, long own, long opp, int shift){
+            long line = 0;
+            long x = move >>> shift;
+            while ((x & opp) != 0){
+                line |= x;
+                x >>>= shift;
+            }
+            return (x & own) != 0 ? line : 0;
         }
-    }
 
-    // H-MiniMax w/a-B pruning Algorithm class
-    static class algorithm8x8{
-        int ai;             // the index of the ai's color
-        int opponent;       // the index of the player's color
-        Node initialState;  // the initial state of the algorithm
+        /** possibleMoves method
+         * - finds the possible moves on the board for a color
+         * - all the moves are found at once by shifting the whole board in each of the 8 directions
+         * - the moves can be looped over without boxing:
+         *      for (long m = moves; m != 0; m &= m - 1) { int square = Long.numberOfTrailingZeros(m); ... }
+         * @param color the color that the program is trying to find the possible moves for
+         * @return bitboard with a bit set for every possible move
+         * */
+        public long possibleMoves (int color){
+            return possibleMoves(discs(color), discs((color+1)%2));
+        }
 
-        int depth;          // the depth of the current node
-        int depthLimit;     // the desired depth of the algorithm
+        /** possibleMoves method
+         * @param own the pieces of the color that is moving
+         * @param opp the pieces of the opposite color
+         * @return bitboard with a bit set for every possible move
+         * */
+        public long possibleMoves (long own, long opp){
+            long empty = ~(own | opp) & full;
+            long ret = 0;
+            // shifting up makes the column bigger for 1 and size+1, and smaller for size-1
+            ret |= ((fillUp(own, opp & notFirst, 1) & opp) << 1) & notFirst;
+            ret |= (fillUp(own, opp, size) & opp) << size;
+            ret |= ((fillUp(own, opp & notFirst, size+1) & opp) << (size+1)) & notFirst;
+            ret |= ((fillUp(own, opp & notLast, size-1) & opp) << (size-1)) & notLast;
+            // shifting down is the other way around
+            ret |= ((fillDown(own, opp & notLast, 1) & opp) >>> 1) & notLast;
+            ret |= (fillDown(own, opp, size) & opp) >>> size;
+            ret |= ((fillDown(own, opp & notLast, size+1) & opp) >>> (size+1)) & notLast;
+            ret |= ((fillDown(own, opp & notFirst, size-1) & opp) >>> (size-1)) & notFirst;
+            return ret & empty;
+        }
 
-        // Constructor class
-        public algorithm8x8 (Node initialState, int depthLimit){
-            this.initialState = initialState;
-            ai = initialState.state.botColor;
-            opponent = initialState.state.playerColor;
-            depth = 0;
-            this.depthLimit = depthLimit;
+        /** fillUp method
+         * - helper method for possibleMoves
+         * - Kogge-Stone fill: spreads gen over pro in one direction in 3 steps (1, 2 and 4 squares at a time)
+         * @param gen the pieces to start from
+         * @param pro the squares the fill can go over
+         * @param shift the number of bits one step in the direction is
+         * @return gen and all the squares of pro that are connected to it in that direction
+         * */
+        private static long fillUp (long gen, long pro, int shift){
+            gen |= pro & (gen << shift);
+            pro &= pro << shift;
+            gen |= pro & (gen << 2*shift);
+            pro &= pro << 2*shift;
+            gen |= pro & (gen << 4*shift);
+            return gen;
         }
 
-        /** hAlphaBetaSearch method
-         * - to find the most correct move after searching the entire tree recursively
-         * @param s the state that the program is currently in
-         * @param possibleMoves a set of all the possible moves the state can possibly move
+        /** fillDown method
+         * - the same as fillUp, but going the other way
          * */
-        public String hAlphaBetaSearch(Node s, Set<String> possibleMoves){
-            // filler variables that are to be replaced later
-            int bestValue = -10000;
-            String bestMove = "FILLER";
-            String valueMove = bestValue+","+bestMove;
+        private static long fillDown (long gen, long pro, int shift){
+            gen |= pro & (gen >>> shift);
+            pro &= pro >>> shift;
+            gen |= pro & (gen >>> 2*shift);
+            pro &= pro >>> 2*shift;
+            gen |= pro & (gen >>> 4*shift);
+            return gen;
+        }
 
-            // setting the alpha and beta for pruning
-            int alpha = -10000;
-            int beta = 10000;
+        /** moveList method
+         * - puts the squares of a move bitboard into an array, for when the moves need to be sorted
+         * @param moves the bitboard of moves
+         * @param list the array to put the squares in
+         * @return the number of moves
+         * */
+        public static int moveList (long moves, int[] list){
+            int n = 0;
+            for (long m = moves; m != 0; m &= m - 1)
+                list[n++] = Long.numberOfTrailingZeros(m);
+            return n;
+        }
 
-            // find the maximum possible value to move given the state the program is in and returning it
-            valueMove = maxValue (s, possibleMoves, alpha, beta, valueMove);
-            return valueMove;
+        /** move method
+         * - places a piece on the board and the subsequent reversal of other pieces
+         * - unlike Board.move, the move is made in place instead of on a copy
+         * @param square the square the program would like to place a piece on
+         * @param color the color of the piece
+         * @return true if the move was made, false if it isn't a legal move
+         * */
+        public boolean move (int square, int color){
+            return makeMove(square, color) != 0;
         }
 
-        /** maxValue method
-         * - to find the maximum possible value for the program to move
-         * @param s the state that the program is currently in
-         * @param possibleMoves a set of all the possible moves the state can possibly move
-         * @param valueMove a string comprised of two variables: value and move
+        /** move method
+         * @param location the location the program would like to place a piece on, such as "d3"
+         * @param color the color of the piece
+         * @return true if the move was made, false if it isn't a legal move
          * */
-        public String maxValue(Node s, Set<String> possibleMoves, int alpha, int beta, String valueMove){
-            // increase the depth by 1 every time
-            depth+=1;
+        public boolean move (String location, int color){
+            int square = square(location);
+            return square >= 0 && move(square, color);
+        }
 
-            // if the current state is at its cutoff/goal state, then return the evaluation function
-            if (isCutOff(s, depth)) {
-                return eval(s, s.state.currentPlayer) + "," + valueMove.split(",")[1];
+        /** makeMove method
+         * - places a piece on the board in place, working out the flipped pieces only once
+         * - the move can be taken back with unmakeMove and the returned flips, so the search can
+         *   use one board for every node without copying it
+         * @param square the square the program would like to place a piece on
+         * @param color the color of the piece
+         * @return the bitboard of the flipped pieces, 0 if it isn't a legal move (nothing is changed)
+         * */
+        public long makeMove (int square, int color){
+            long flipped = flips(square, color);
+            if (flipped != 0){
+                apply(square, color, flipped);
+                if (features != null)
+                    PatternEval.update(features, square, color, flipped, 1);
             }
+            return flipped;
+        }
 
-            int v = -10000;
-            String[] vM = valueMove.split(",");
-            // for every action in the possible moves the state can make
-            for (String a : possibleMoves){
-                // find the result of the move and get the worst case scenario the opponent can make
-                Node result = result(s, a, ai);
-                String v2a2 = minValue(result, result.state.possibleMoves(result.state, opponent).keySet(), alpha, beta, valueMove);
-                // split up the string and find if the value is better than v
-                String[] vM2 = v2a2.split(",");
-                if (Integer.parseInt(vM2[0]) > v){
-                    // set the values to the best possible value
-                    vM[1] = a;
-                    vM[0] = vM2[0];
-                    v = Integer.parseInt(vM2[0]);
-                    // set alpha to the highest of v and alpha
-                    alpha = Math.max(alpha, v);
-                }
-                // if v is getting bigger than beta, then kill the program and send up the valueMove
-                if (v >= beta){
-                    return v+","+vM[1];
-                }
-            }
-            return vM[0]+","+vM[1];
-        }
-
-        /** minValue method
-         * - to find the minimum possible value for the opponent to move (hoping for the worst)
-         * @param s the state that the program is currently in
-         * @param possibleMoves a set of all the possible moves the state can possibly move
-         * @param valueMove a string comprised of two variables: value and move
+        /** unmakeMove method
+         * - takes back a move made by makeMove
+         * @param square the square the piece was placed on
+         * @param color the color of the piece
+         * @param flipped the flips makeMove returned
          * */
-        public String minValue (Node s, Set<String> possibleMoves, int alpha, int beta, String valueMove){
-            // increase the depth by 1 every time
-            depth+=1;
+        public void unmakeMove (int square, int color, long flipped){
+            apply(square, color, flipped);
+            if (features != null)
+                PatternEval.update(features, square, color, flipped, -1);
+        }
 
-            // if the current state is at its cutoff/goal state, then return the evaluation function
-            if (isCutOff(s, depth)) {
-                return eval(s, s.state.currentPlayer) + "," + valueMove.split(",")[1];
+        /** apply method
+         * - helper method for makeMove and unmakeMove
+         * - XOR-ing the same move twice gives back the old board
+         * */
+        private void apply (int square, int color, long flipped){
+            if (color == 0){
+                black ^= flipped | (1L << square);
+                white ^= flipped;
             }
-            String[] vM = valueMove.split(",");
-            int v = 10000;
-            // for every action in the possible moves the state can make
-            for (String a : possibleMoves){
-                // find the result of the move and get the best case move the function can make
-                Node result = result(s, a, opponent);
-                String v2a2 = maxValue(result, result.state.possibleMoves(result.state, ai).keySet(), alpha, beta, valueMove);
-                String[] vM2 = v2a2.split(",");
-                // set the values to the worst possible value
-                if (Integer.parseInt(vM2[0]) < v){
-                    vM[0] = vM2[0];
-                    vM[1] = a;
-                    v = Integer.parseInt(vM2[0]);
-                    // set beta to the lowest of v and beta
-                    beta = Math.min(alpha, v);
-                }
-                // if v is getting smaller than alpha, then kill the program and send up the valueMove
-                if (v <= alpha){
-                    return v+","+vM[1];
-                }
-            }
-            return vM[0]+","+vM[1];
-        }
-
-        /** isGoal method
-         * - to determine whether the state the function is at its cutOff point
-         * @param state the state we are determining
-         * @param depth the depth
-         * */
-        public boolean isCutOff(Node state, int depth){
-            // if the program has reached its depth limit, it has reached its cutoff point
-            if (depth >= depthLimit) return true;
-            Board board = state.state;
-
-            // if neither size has any available moves -> return true
-            if (board.possibleMoves(board, 0).keySet().size() == 0 &&
-                    board.possibleMoves(board, 1).keySet().size() == 0)
-                return true;
-            // if there are no more available spaces -> return true
-            return state.state.numSquares(state.state.board, " ") == 0;
-        }
-
-        /** result method
-         * - to find the result after putting a piece on the board
-         * @param node the state that the program is currently in
-         * @param location the place in which the program wishes to place the piece
+            else {
+                white ^= flipped | (1L << square);
+                black ^= flipped;
+            }
+            hash ^= ZOBRIST[color][square];
+            for (long f = flipped; f != 0; f &= f - 1)
+                hash ^= ZOBRIST_FLIP[Long.numberOfTrailingZeros(f)];
+        }
+
+        /** corners method
+         * @return the bitboard of the 4 corners
+         * */
+        public long corners (){
+            return 1L | (1L << (size-1)) | (1L << (size*(size-1))) | (1L << (size*size-1));
+        }
+
+        /** toBoard method
+         * - converts the BitBoard back into a Board
          * @param currentPlayer indication of whom the method is called for
+         * @param botColor the program's color
          * */
-        public Node result (Node node, String location, int currentPlayer){
-            // tempNode that creates a deep copy of the node to store as a parent
-            Node tempNode = new Node(node.state, node.parent, node.action, node.pathCost);
+        public Board toBoard (int currentPlayer, int botColor){
+            String[][] ret = new String[size][size];
+            for (int i = 0; i < size; i++){
+                for (int j = 0; j < size; j++){
+                    if ((black & bit(i, j)) != 0)
+                        ret[i][j] = "B";
+                    else if ((white & bit(i, j)) != 0)
+                        ret[i][j] = "W";
+                    else
+                        ret[i][j] = " ";
+                }
+            }
+            return new Board(ret, currentPlayer, botColor);
+        }
+
+        public String toString(){
+            return toBoard(0, 0).toString();
+        }
+    }
+
+    // TranspositionTable Class
+    static class TranspositionTable {
+        static final int EXACT = 0;     // the score is the exact value of the position
+        static final int LOWER = 1;     // the score is a lower bound (the search failed high)
+        static final int UPPER = 2;     // the score is an upper bound (the search failed low)
+        static final long VALID = 1L << 63;  // set in every entry, so 0 can mean "not found"
 
-            // board instantiation to use the move method in the Board class
-            Board board = new Board(node.state.board, currentPlayer, node.state.botColor);
-            board=new Board(board.move(node.state, location, board.currentPlayer).board, board.currentPlayer, board.botColor);
+        long[] keys;        // the Zobrist key of each entry XOR-ed with its data
+        long[] data;        // the packed depth, bound, score and best move of each entry
+        int buckets;        // the number of buckets, a power of two
+        int generation;     // the search the table is on, so old entries can be replaced
 
-            // return the move method
-            return new Node(board, tempNode, location, node.pathCost+1);
+        /** TranspositionTable constructor class
+         * - every bucket has 2 entries of 16 bytes: one kept for the deepest search, one always replaced
+         * - the table can be shared by several threads without locks: the key of an entry is stored XOR-ed
+         *   with its data, so if two threads write the same entry at once and the halves get mixed up,
+         *   the entry just won't be found
+         * @param megabytes the memory budget of the table
+         * */
+        public TranspositionTable (int megabytes){
+            long bytes = Math.max(1, megabytes) * 1024L * 1024L;
+            buckets = (int) Math.min(1 << 28, Long.highestOneBit(bytes / 32));
+            keys = new long[buckets*2];
+            data = new long[buckets*2];
         }
 
-        /** eval method
-         * - to give a reasonable heuristic function to determine what the best move is
-         * @param s the state
-         * @param currentPlayer the color of the current player
+        /** clear method
+         * - empties the table
          * */
-        public int eval  (Node s, int currentPlayer) {
-            /* Weighting is based on 3 things:
-            * - discCount : 1
-            * - amount of legal moves : 100
-            * - corner piece count : 1000
-            * */
-            int discCount = s.state.numSquares(s.state.board, s.state.colors[currentPlayer]);
-            int legalMoves = s.state.possibleMoves(s.state, (currentPlayer+1)%2).keySet().size();
-            int cornerSquareCount = 0;
-            if (s.state.board[0][0].equals(s.state.colors[currentPlayer]))
-                cornerSquareCount+=1;
-            if (s.state.board[s.state.board.length-1][0].equals(s.state.colors[currentPlayer]))
-                cornerSquareCount+=1;
-            if (s.state.board[0][s.state.board.length-1].equals(s.state.colors[currentPlayer]))
-                cornerSquareCount+=1;
-            if (s.state.board[s.state.board.length-1][s.state.board.length-1].equals(s.state.colors[currentPlayer]))
-                cornerSquareCount+=1;
+        public void clear (){
+            Arrays.fill(keys, 0);
+            Arrays.fill(data, 0);
+            generation = 0;
+        }
 
-            //weighting
-            int ret = 0;
-            ret += discCount;
-            ret += (legalMoves*100);
-            ret += (cornerSquareCount*1000);
-            return ret;
+        /** newSearch method
+         * - to be called before every search, entries from older searches can be replaced by shallower ones
+         * */
+        public void newSearch (){
+            generation = (generation + 1) & 0x3F;
         }
-    }
 
-    public static void run4x4(boolean black) {
-        int cP;
-        if (black)
-            cP = 0;
-        else
-            cP = 1;
-        Board b = new Board(cP, (cP + 1) % 2, false);
-        Node state = new Node(b);
-        System.out.println(state.state);
-        System.out.println("Possible Moves: " + state.state.possibleMoves(state.state, b.currentPlayer).keySet());
-        Scanner in = new Scanner(System.in);
-        String[] pieces = new String[]{"B", "W"};
-        System.out.println("Enter a move: (q to quit)");
-        String move = in.next();
-        try {
-            if (move.equalsIgnoreCase("q")) {
-                System.out.println("Ending program");
+        /** probe method
+         * - finds a position in the table
+         * @param key the Zobrist key of the position
+         * @return the packed entry, or 0 if it isn't in the table
+         * */
+        public long probe (long key){
+            int i = (int) (key & (buckets - 1)) << 1;
+            // read each half once, another thread could be changing them
+            long entry = data[i];
+            if (entry != 0 && (keys[i] ^ entry) == key)
+                return entry;
+            entry = data[i+1];
+            if (entry != 0 && (keys[i+1] ^ entry) == key)
+                return entry;
+            return 0;
+        }
+
+        /** store method
+         * - puts a search result in the table
+         * - the first entry of a bucket is only replaced by a search as deep or by a newer search,
+         *   otherwise the result goes in the second entry
+         * @param key the Zobrist key of the position
+         * @param depth the depth the position was searched to
+         * @param bound EXACT, LOWER or UPPER
+         * @param score the score of the search
+         * @param move the best move found, or -1
+         * */
+        public void store (long key, int depth, int bound, int score, int move){
+            int i = (int) (key & (buckets - 1)) << 1;
+            long old = data[i];
+            boolean same = old != 0 && (keys[i] ^ old) == key;
+            // keep the old best move if the new search didn't find one
+            if (move < 0 && same)
+                move = move(old);
+            long entry = pack(depth, bound, score, move);
+            if (same || old == 0 || depth >= depth(old) || generation(old) != generation){
+                keys[i] = key ^ entry;
+                data[i] = entry;
+            }
+            else {
+                keys[i+1] = key ^ entry;
+                data[i+1] = entry;
+            }
+        }
+
+        /** pack method
+         * - helper method for store
+         * - bits 0-31 are the score, 32-39 the depth, 40-41 the bound, 42-48 the move + 1 and 49-54 the generation
+         * */
+        private long pack (int depth, int bound, int score, int move){
+            return VALID | (score & 0xFFFFFFFFL) | ((long) depth << 32) | ((long) bound << 40)
+                    | ((long) (move + 1) << 42) | ((long) generation << 49);
+        }
+
+        public static int score (long entry){
+            return (int) entry;
+        }
+
+        public static int depth (long entry){
+            return (int) (entry >>> 32) & 0xFF;
+        }
+
+        public static int bound (long entry){
+            return (int) (entry >>> 40) & 0x3;
+        }
+
+        /** move method
+         * @return the best move of the entry, or -1 if there isn't one
+         * */
+        public static int move (long entry){
+            return ((int) (entry >>> 42) & 0x7F) - 1;
+        }
+
+        public static int generation (long entry){
+            return (int) (entry >>> 49) & 0x3F;
+        }
+    }
+
+    // TimeControl Class
+    static class TimeControl {
+        long moveTime;      // the time for every move in ms, 0 if the game clock is used instead
+        long remaining;     // the time left on the game clock in ms
+        long increment;     // the time added to the game clock after every move in ms
+
+        // volatile, since a search that is pondering reads them while the main thread starts the move
+        volatile long start;        // when the current move started
+        volatile long budget;       // the time the current move is allowed to take
+        volatile boolean stopped;   // set to stop the search right away
+
+        /** TimeControl constructor class with a fixed time for every move
+         * @param moveTime the time for every move in ms
+         * */
+        public TimeControl (long moveTime){
+            this.moveTime = moveTime;
+        }
+
+        /** TimeControl constructor class with a game clock
+         * @param remaining the time on the clock for the whole game in ms
+         * @param increment the time added to the clock after every move in ms
+         * */
+        public TimeControl (long remaining, long increment){
+            this.remaining = remaining;
+            this.increment = increment;
+        }
+
+        /** startMove method
+         * - starts the clock for a move and works out how long the move is allowed to take
+         * @param emptySquares the number of empty squares, to guess how many moves are left
+         * */
+        public void startMove (int emptySquares){
+            start = System.currentTimeMillis();
+            stopped = false;
+            if (moveTime > 0)
+                budget = moveTime;
+            else {
+                // spread the clock over the moves the program still has to make, plus most of the increment
+                int movesLeft = Math.max(emptySquares/2, 1) + 1;
+                budget = Math.min(remaining/movesLeft + increment*3/4, remaining/2);
+            }
+            // leave a little time to send the move back
+            budget = Math.max(1, budget - Math.min(budget/10, 50));
+        }
+
+        /** ponder method
+         * - starts the clock for a search on the opponent's time, which doesn't run out: it is stopped with
+         *   stopped, or it becomes the search of the move when startMove is called
+         * */
+        public void ponder (){
+            stopped = false;
+            budget = Long.MAX_VALUE;
+            start = System.currentTimeMillis();
+        }
+
+        /** elapsed method
+         * @return the time the current move has taken in ms
+         * */
+        public long elapsed (){
+            return System.currentTimeMillis() - start;
+        }
+
+        /** timeUp method
+         * @return true if the search has to stop right away
+         * */
+        public boolean timeUp (){
+            return stopped || elapsed() >= budget;
+        }
+
+        /** startNextDepth method
+         * - a deeper search takes several times longer than the last one, so it isn't worth starting
+         *   one when half of the time is already gone
+         * @return true if there is enough time to start searching one more depth
+         * */
+        public boolean startNextDepth (){
+            return !stopped && elapsed() < budget/2;
+        }
+
+        /** finishMove method
+         * - takes the time of the move off of the game clock and adds the increment
+         * */
+        public void finishMove (){
+            if (moveTime == 0)
+                remaining = Math.max(0, remaining - elapsed()) + increment;
+        }
+    }
+
+    // Ponder Class
+    static class Ponder {
+        String predicted;       // the move the player is expected to make
+        algorithm8x8 search;    // the search of the position after that move, if it's searched on one thread
+        LazySMP smp;            // or the Lazy SMP search that searches it
+        TimeControl clock;      // the clock of the game, pondering until the player moves
+        Thread thread;          // the thread the search runs on
+
+        /** Ponder constructor class
+         * - starts searching the position after the predicted move on another thread, while the main thread
+         *   waits for the player's move
+         * - the position is searched the way the bot's move would be: solved if the endgame solver solves it,
+         *   otherwise with Lazy SMP if the game uses it, or on one thread (Young Brothers Wait keeps no principal
+         *   variation, so with it there is only a move to ponder on in the endgame)
+         * @param state the state after the bot's move, with the player to move
+         * @param predicted the move the player is expected to make, the second move of the principal variation
+         * @param table the transposition table of the game, the search fills it in for the next searches
+         * @param endgame the endgame solver of the game
+         * @param smp the Lazy SMP search of the game, or null
+         * @param clock the clock of the game
+         * @param depth the deepest the search can go
+         * */
+        public Ponder (Node state, String predicted, TranspositionTable table, EndgameSolver endgame, LazySMP smp,
+                       TimeControl clock, int depth){
+            this.predicted = predicted;
+            this.clock = clock;
+            Board b = state.state;
+            Board after = new Board(b.move(b, predicted, b.currentPlayer).board, b.botColor, b.botColor);
+            Node node = new Node(after, state, predicted, state.pathCost);
+            Set<String> moves = after.possibleMoves(after, after.currentPlayer).keySet();
+            Runnable searching;
+            if (smp == null || endgame.solves(after.numSquares(after.board, " "))){
+                search = new algorithm8x8(node, depth, table);
+                search.endgame = endgame;
+                searching = () -> search.iterativeDeepening(node, moves, clock);
+            }
+            else {
+                this.smp = smp;
+                searching = () -> smp.search(node, moves, depth, clock);
+            }
+            clock.ponder();
+            thread = new Thread(searching, "ponder");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        /** hit method
+         * - the player made the predicted move: the clock has already been started for the bot's move with
+         *   startMove, so the search goes on until that time runs out, with the depths it already finished
+         * @return the search that picks the move once it is done
+         * */
+        public algorithm8x8 hit () throws InterruptedException {
+            thread.join();
+            return smp != null ? smp.main : search;
+        }
+
+        /** miss method
+         * - the player made another move: the search is stopped, what it put in the table stays there
+         * */
+        public void miss () throws InterruptedException {
+            clock.stopped = true;
+            thread.join();
+        }
+    }
+
+    // LazySMP Class
+    static class LazySMP {
+        int threads;                // the number of threads searching, counting the main thread
+        TranspositionTable table;   // the table all of the threads share
+        ExecutorService helpers;    // the threads that help the main thread
+        algorithm8x8 main;          // the search of the main thread, which picks the move
+        long nodes;                 // the nodes searched by all of the threads in the last search
+
+        /** LazySMP constructor class
+         * @param threads the number of threads searching, counting the main thread
+         * @param table the table all of the threads share
+         * */
+        public LazySMP (int threads, TranspositionTable table){
+            this.threads = Math.max(1, threads);
+            this.table = table;
+            helpers = Executors.newFixedThreadPool(Math.max(1, this.threads-1), r -> {
+                Thread t = new Thread(r, "lazy-smp-helper");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+
+        /** search method
+         * - every thread runs its own iterative deepening search on its own board, and they only share
+         *   the transposition table, so the helpers fill it with results the main thread can use
+         * - half of the helpers start one depth deeper, so the threads don't all search the same thing
+         * @param s the state that the program is currently in
+         * @param possibleMoves a set of all the possible moves the state can possibly move
+         * @param depthLimit the deepest the search can go
+         * @param clock the clock of the move, already started
+         * @return the score of the main thread's search, its move is main.bestMove()
+         * */
+        public int search (Node s, Set<String> possibleMoves, int depthLimit, TimeControl clock){
+            table.newSearch();
+            ArrayList<algorithm8x8> searchers = new ArrayList<>();
+            ArrayList<Future<?>> running = new ArrayList<>();
+            for (int i = 1; i < threads; i++){
+                algorithm8x8 helper = new algorithm8x8(s, depthLimit, table);
+                helper.ageTable = false;
+                int startDepth = 1 + i % 2;
+                searchers.add(helper);
+                running.add(helpers.submit(() -> helper.iterativeDeepening(s, possibleMoves, clock, startDepth)));
+            }
+            main = new algorithm8x8(s, depthLimit, table);
+            main.ageTable = false;
+            int score = main.iterativeDeepening(s, possibleMoves, clock, 1);
+
+            // the main thread is done, so stop the helpers
+            clock.stopped = true;
+            nodes = main.nodes;
+            for (int i = 0; i < running.size(); i++){
+                try {
+                    running.get(i).get();
+                } catch (InterruptedException e){
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException e){
+                    System.out.println("A helper's search failed: " + e.getCause());
+                }
+                nodes += searchers.get(i).nodes;
+                // the helpers' counters go in the main thread's stats, its depths and times are the search's
+                main.stats.add(searchers.get(i).stats);
+            }
+            return score;
+        }
+
+        /** shutdown method
+         * - stops the helper threads when there are no more searches
+         * */
+        public void shutdown (){
+            helpers.shutdownNow();
+        }
+
+        /** benchmark method
+         * - searches the same positions to the same depth with 1, 2, 4... threads and prints
+         *   the nodes per second and the time it took to reach the depth
+         * @param maxThreads the most threads to try
+         * @param depth the depth to search each position to
+         * */
+        public static void benchmark (int maxThreads, int depth){
+            ArrayList<Node> positions = randomPositions(8, 20, 242);
+            TranspositionTable table = new TranspositionTable(option("hash", 64));
+            System.out.println("threads  time(ms)  nodes  nodes/sec  time-to-depth speedup  nodes/sec speedup");
+            double baseTime = 0;
+            double baseSpeed = 0;
+            // 1, 2, 4... threads and then maxThreads if it isn't one of them
+            // the first round with 1 thread is only to warm up the JIT, so it isn't printed
+            ArrayList<Integer> counts = new ArrayList<>();
+            counts.add(0);
+            for (int threads = 1; threads <= maxThreads; threads *= 2)
+                counts.add(threads);
+            if (maxThreads > 1 && Integer.bitCount(maxThreads) != 1)
+                counts.add(maxThreads);
+            for (int threads : counts){
+                LazySMP smp = new LazySMP(Math.max(1, threads), table);
+                long time = 0;
+                long nodes = 0;
+                for (Node position : positions){
+                    table.clear();
+                    Board b = position.state;
+                    TimeControl clock = new TimeControl(Long.MAX_VALUE/4);
+                    clock.startMove(b.numSquares(b.board, " "));
+                    smp.search(position, b.possibleMoves(b, b.currentPlayer).keySet(), depth, clock);
+                    time += clock.elapsed();
+                    nodes += smp.nodes;
+                }
+                smp.shutdown();
+                double speed = nodes * 1000.0 / Math.max(1, time);
+                if (threads == 0)
+                    continue;
+                if (threads == 1){
+                    baseTime = time;
+                    baseSpeed = speed;
+                }
+                System.out.printf("%7d  %8d  %d  %.0f  %.2f  %.2f%n", threads, time, nodes, speed,
+                        baseTime / Math.max(1, time), speed / baseSpeed);
+            }
+        }
+    }
+
+    // YBWSearch Class
+    static class YBWSearch {
+        ForkJoinPool pool;          // the threads that search the younger brothers
+        int splitDepth;             // positions searched to less than this depth are searched on one thread
+        ThreadLocal<algorithm8x8> serial;  // the one-thread search of each thread, without a transposition table
+        LongAdder nodes = new LongAdder(); // the nodes searched by all of the threads
+        SearchStats stats = new SearchStats();  // the counters of every thread's algorithm8x8 added up
+        ConcurrentLinkedQueue<algorithm8x8> searchers = new ConcurrentLinkedQueue<>();  // made by serial this depth
+        long nodesBefore;                   // nodes.sum() when the search started
+
+        int bestMove = algorithm8x8.PASS;   // the move of the last finished search
+        int bestScore;                      // the score of the last finished search
+        int completedDepth;                 // the deepest depth the iterative deepening search finished
+
+        /** YBWSearch constructor class
+         * @param threads the number of threads
+         * @param splitDepth positions searched to less than this depth are searched on one thread
+         * */
+        public YBWSearch (int threads, int splitDepth){
+            pool = new ForkJoinPool(Math.max(1, threads));
+            this.splitDepth = Math.max(1, splitDepth);
+        }
+
+        // SplitPoint Class
+        static class SplitPoint {
+            SplitPoint parent;          // the split point above this one
+            volatile boolean cutoff;    // set when a brother fails high, so the others can stop
+            TimeControl clock;          // the clock of the search, only at the root
+
+            public SplitPoint (SplitPoint parent, TimeControl clock){
+                this.parent = parent;
+                this.clock = clock;
+            }
+
+            /** stopped method
+             * @return true if this split point or one above it was cut off, or the clock ran out
+             * */
+            public boolean stopped (){
+                for (SplitPoint sp = this; sp != null; sp = sp.parent){
+                    if (sp.cutoff || (sp.clock != null && sp.clock.timeUp()))
+                        return true;
+                }
+                return false;
+            }
+        }
+
+        // BrotherTask Class, the search of one move of a split point
+        class BrotherTask extends RecursiveTask<Integer> {
+            private static final long serialVersionUID = 1L;
+
+            BitBoard position;      // a copy of the board with the move made, owned by the task
+            int depth, alpha, beta, color;
+            SplitPoint split;       // the split point the task belongs to
+            boolean root;           // true for the search of the root itself
+
+            public BrotherTask (BitBoard position, int depth, int alpha, int beta, int color, SplitPoint split, boolean root){
+                this.position = position;
+                this.depth = depth;
+                this.alpha = alpha;
+                this.beta = beta;
+                this.color = color;
+                this.split = split;
+                this.root = root;
+            }
+
+            protected Integer compute (){
+                return search(position, depth, alpha, beta, color, split, root);
+            }
+        }
+
+        /** hAlphaBetaSearch method
+         * - searches the state to a fixed depth, the score is the same as algorithm8x8's without a table
+         * @param s the state that the program is currently in, the bot color is the color to move
+         * @param depth the depth to search to
+         * @return the score of the state for the bot color
+         * */
+        public int hAlphaBetaSearch (Node s, int depth){
+            startStats();
+            int score = searchDepth(s, depth, null);
+            stats.iteration(depth, nodes.sum() - nodesBefore);
+            stats.finish(nodes.sum() - nodesBefore);
+            return score;
+        }
+
+        /** iterativeDeepening method
+         * - searches to a depth of 1, 2, 3... until the clock runs out or the depth limit is reached
+         * @param s the state that the program is currently in, the bot color is the color to move
+         * @param depthLimit the deepest the search can go
+         * @param clock the clock of the move, already started
+         * @return the score of the deepest search that finished
+         * */
+        public int iterativeDeepening (Node s, int depthLimit, TimeControl clock){
+            BitBoard position = new BitBoard(s.state);
+            int empty = Long.bitCount(position.empty());
+            long moves = position.possibleMoves(s.state.botColor);
+            bestMove = moves == 0 ? algorithm8x8.PASS : Long.numberOfTrailingZeros(moves);
+            completedDepth = 0;
+            startStats();
+            for (int depth = 1; depth <= depthLimit; depth++){
+                int move = bestMove;
+                int score = searchDepth(s, depth, clock);
+                // a search that was stopped halfway is thrown away
+                if (clock.timeUp()){
+                    bestMove = move;
+                    break;
+                }
+                bestScore = score;
+                completedDepth = depth;
+                stats.iteration(depth, nodes.sum() - nodesBefore);
+                if (depth >= empty || !clock.startNextDepth())
+                    break;
+            }
+            stats.finish(nodes.sum() - nodesBefore);
+            return bestScore;
+        }
+
+        /** startStats method
+         * - helper method for the searches
+         * */
+        private void startStats (){
+            stats.start();
+            nodesBefore = nodes.sum();
+        }
+
+        /** searchDepth method
+         * - helper method for the searches
+         * */
+        private int searchDepth (Node s, int depth, TimeControl clock){
+            BitBoard position = new BitBoard(s.state);
+            // the copies of the split points keep the patterns up to date for the serial searches
+            position.enableFeatures();
+            serial = ThreadLocal.withInitial(() -> {
+                algorithm8x8 a = new algorithm8x8(s, depth, null);
+                a.rootMoves = -1L;
+                // the split points above it are full-width, so its subtrees are too
+                a.probCut = null;
+                searchers.add(a);
+                return a;
+            });
+            SplitPoint root = new SplitPoint(null, clock);
+            int score = pool.invoke(new BrotherTask(position, depth, -algorithm8x8.INFINITY, algorithm8x8.INFINITY,
+                    s.state.botColor, root, true));
+            // every thread counted in its own algorithm8x8, they are added up once the threads are done
+            for (algorithm8x8 a; (a = searchers.poll()) != null; )
+                stats.add(a.stats);
+            bestScore = score;
+            return score;
+        }
+
+        /** search method
+         * - Young Brothers Wait: the first move is searched on this thread to get a bound, then the rest
+         *   of the moves are forked with that bound; if one of them fails high the others are stopped
+         * - the moves at split points are in the static order of algorithm8x8.staticOrder, so the
+         *   search is the same every time, and the scores are the same as algorithm8x8's
+         * @param position the board, owned by the calling task
+         * @param depth how many more moves to search
+         * @param alpha the score color is already sure of
+         * @param beta the score the opponent is already sure of
+         * @param color the color to move
+         * @param parent the split point the position is under
+         * @param root true if the position is the root, to keep the best move
+         * @return the score of the position for color
+         * */
+        private int search (BitBoard position, int depth, int alpha, int beta, int color, SplitPoint parent, boolean root){
+            if (parent.stopped())
+                return 0;
+            long moves = position.possibleMoves(color);
+            // small subtrees, and passes and the end of the game, are searched by algorithm8x8 on this thread
+            if ((depth < splitDepth || moves == 0) && !root)
+                return serialSearch(position, depth, alpha, beta, color, parent);
+            if (moves == 0){
+                bestMove = algorithm8x8.PASS;
+                return serialSearch(position, depth, alpha, beta, color, parent);
+            }
+            nodes.increment();
+            int other = (color+1)%2;
+            int[] squares = new int[64];
+            int n = algorithm8x8.staticOrder(moves, squares);
+
+            // the eldest brother is searched first, on this thread
+            int first = squares[0];
+            long flipped = position.makeMove(first, color);
+            int best = -search(position, depth-1, -beta, -alpha, other, parent, false);
+            position.unmakeMove(first, color, flipped);
+            int bestSquare = first;
+            alpha = Math.max(alpha, best);
+
+            // the younger brothers are forked with the bound of the eldest brother
+            if (alpha < beta && n > 1 && !parent.stopped()){
+                SplitPoint split = new SplitPoint(parent, null);
+                BrotherTask[] tasks = new BrotherTask[n];
+                for (int i = 1; i < n; i++){
+                    BitBoard child = new BitBoard(position);
+                    child.makeMove(squares[i], color);
+                    tasks[i] = new BrotherTask(child, depth-1, -beta, -alpha, other, split, false);
+                    tasks[i].fork();
+                }
+                // the results are looked at in order, so a tie always goes to the same move
+                for (int i = 1; i < n; i++){
+                    int score = -tasks[i].join();
+                    if (parent.stopped()){
+                        cancel(tasks, i+1);
+                        return 0;
+                    }
+                    if (score > best){
+                        best = score;
+                        bestSquare = squares[i];
+                        if (score >= beta){
+                            // the brothers that are still searching are not needed anymore
+                            split.cutoff = true;
+                            cancel(tasks, i+1);
+                            break;
+                        }
+                    }
+                }
+            }
+            if (root && !parent.stopped())
+                bestMove = bestSquare;
+            return best;
+        }
+
+        /** cancel method
+         * - helper method for search
+         * - tasks that haven't started yet won't start, the ones that have will see the cutoff and are waited for,
+         *   so no task of a split point is still searching when its search returns
+         * */
+        private void cancel (BrotherTask[] tasks, int from){
+            for (int i = Math.max(1, from); i < tasks.length; i++)
+                tasks[i].cancel(false);
+            for (int i = Math.max(1, from); i < tasks.length; i++)
+                tasks[i].quietlyJoin();
+        }
+
+        /** serialSearch method
+         * - helper method for search
+         * - searches on this thread with its algorithm8x8, which stops if the split point is cut off
+         * */
+        private int serialSearch (BitBoard position, int depth, int alpha, int beta, int color, SplitPoint parent){
+            algorithm8x8 a = serial.get();
+            a.stop = parent::stopped;
+            long before = a.nodes;
+            int score = a.searchPosition(position, depth, alpha, beta, color);
+            nodes.add(a.nodes - before);
+            return score;
+        }
+
+        /** bestMove method
+         * @return the move of the last finished search
+         * */
+        public String bestMove (){
+            return bestMove == algorithm8x8.PASS ? "pass" : BitBoard.COLUMNS[bestMove % 8] + BitBoard.ROWS[bestMove / 8];
+        }
+
+        /** shutdown method
+         * - stops the threads when there are no more searches
+         * */
+        public void shutdown (){
+            pool.shutdownNow();
+        }
+
+        /** benchmark method
+         * - searches positions to the same depth with algorithm8x8 (without a table) and with YBWSearch,
+         *   checks that the scores are the same and prints the times
+         * - the moves can only be different when two moves have the same score, since algorithm8x8 orders
+         *   its moves by killers and history
+         * @param threads the number of threads for YBWSearch
+         * @param depth the depth to search each position to
+         * */
+        public static void benchmark (int threads, int depth){
+            ArrayList<Node> positions = randomPositions(8, 20, 242);
+            YBWSearch ybw = new YBWSearch(threads, option("split", 4));
+            System.out.println("position  serial(ms)  serial nodes  ybw(ms)  ybw nodes  same score  same move");
+            long serialTime = 0;
+            long ybwTime = 0;
+            boolean allSame = true;
+            for (int i = 0; i < positions.size(); i++){
+                Node position = positions.get(i);
+                Board b = position.state;
+                long start = System.nanoTime();
+                algorithm8x8 a = new algorithm8x8(position, depth, null);
+                a.probCut = null;
+                int serialScore = a.hAlphaBetaSearch(position, b.possibleMoves(b, b.currentPlayer).keySet());
+                long time1 = (System.nanoTime() - start) / 1000000;
+                start = System.nanoTime();
+                ybw.nodes.reset();
+                int ybwScore = ybw.hAlphaBetaSearch(position, depth);
+                long time2 = (System.nanoTime() - start) / 1000000;
+                boolean same = serialScore == ybwScore;
+                allSame &= same;
+                serialTime += time1;
+                ybwTime += time2;
+                System.out.printf("%8d  %10d  %12d  %7d  %9d  %10s  %9s%n", i, time1, a.nodes, time2, ybw.nodes.sum(),
+                        same, a.bestMove().equals(ybw.bestMove()));
+            }
+            ybw.shutdown();
+            System.out.printf("total: serial %d ms, ybw %d ms with %d threads, speedup %.2f, all the scores the same: %s%n",
+                    serialTime, ybwTime, threads, (double) serialTime / Math.max(1, ybwTime), allSame);
+        }
+    }
+
+    // EndgameSolver Class
+    static class EndgameSolver {
+        static final long NOT_A = 0xFEFEFEFEFEFEFEFEL;     // every square except the "a" column
+        static final long NOT_H = 0x7F7F7F7F7F7F7F7FL;     // every square except the "h" column
+        static final long CORNERS = 0x8100000000000081L;   // the 4 corners
+        // the 4 quadrants of the board, for parity: the last move in a region is best made by us
+        static final long[] QUADRANTS = new long[]{
+                0x000000000F0F0F0FL, 0x00000000F0F0F0F0L, 0x0F0F0F0F00000000L, 0xF0F0F0F000000000L};
+        static final long EDGE_COLUMNS = 0x8181818181818181L;  // the "a" and "h" columns
+        static final long EDGE_ROWS = 0xFF000000000000FFL;     // the first and last rows
+        static final long EDGES = EDGE_COLUMNS | EDGE_ROWS;
+        static final long[] DIAGONALS9 = diagonals(9);   // the diagonals going towards "h8"
+        static final long[] DIAGONALS7 = diagonals(7);   // the diagonals going towards "a8"
+        static final long[][] RAYS = rays();             // the squares in each direction from each square
+        static final long[] NEIGHBORS = neighbors();     // the squares next to each square
+        static final int SORT_EMPTIES = 7;  // with this many empties or more, moves are sorted by the opponent's mobility
+        static final int HASH_EMPTIES = 9;  // with this many empties or more, the transposition table is used
+        static final int INFINITY = 100;    // bigger than any difference in pieces
+
+        int wldEmpties;             // positions with this many empty squares or less are solved for win/loss/draw
+        int exactEmpties;           // and with this many or less for the exact difference in pieces
+        TranspositionTable table;   // the results of positions that were already solved
+        long nodes;                 // the number of nodes searched
+        TimeControl clock;          // the clock of the search, null if there isn't one
+        boolean aborted;            // set when the clock runs out in the middle of a solve
+        int bestMove;               // the best move found by the last solve, or -1
+        int rootMove;               // the best move of the last search of the root, or -1
+
+        long[][] moveFlips = new long[61][34];     // the flips of the sorted moves, by the number of empties
+        int[][] moveList = new int[61][34];        // the sorted moves, by the number of empties
+        int[][] moveScore = new int[61][34];       // the sorting scores of those moves
+
+        /** EndgameSolver constructor class
+         * @param megabytes the memory budget of the solver's transposition table
+         * */
+        public EndgameSolver (int megabytes){
+            this(megabytes, 0, 0);
+        }
+
+        /** EndgameSolver constructor class with the number of empty squares the solver is used for
+         * @param megabytes the memory budget of the solver's transposition table
+         * @param wldEmpties the most empty squares to solve for win/loss/draw
+         * @param exactEmpties the most empty squares to solve for the exact difference in pieces
+         * */
+        public EndgameSolver (int megabytes, int wldEmpties, int exactEmpties){
+            table = new TranspositionTable(megabytes);
+            this.wldEmpties = wldEmpties;
+            this.exactEmpties = exactEmpties;
+        }
+
+        /** solves method
+         * @param empties the number of empty squares, as counted by Board.numSquares(board, " ")
+         * @return true if the solver should be used instead of the search
+         * */
+        public boolean solves (int empties){
+            return empties <= Math.max(wldEmpties, exactEmpties);
+        }
+
+        /** solve method
+         * - finds the exact result of the 8x8 board with perfect play by both sides
+         * @param b the board
+         * @param color the color to move
+         * @param exact true for the difference in pieces, false for only win/loss/draw (faster)
+         * @param clock the clock of the move, or null
+         * @return the difference in pieces for color at the end of the game (empty squares go to the winner),
+         *         or with exact false: 1 for a win, 0 for a draw, -1 for a loss
+         * */
+        public int solve (BitBoard b, int color, boolean exact, TimeControl clock){
+            this.clock = clock;
+            nodes = 0;
+            aborted = false;
+            table.newSearch();
+            long P = b.discs(color);
+            long O = b.discs((color+1)%2);
+            int n = Long.bitCount(~(P | O));
+
+            // first only whether color wins, loses or draws, which is much faster than the difference in pieces
+            bestMove = -1;
+            int score = searchRoot(P, O, n, -1, 1);
+            bestMove = rootMove;
+            if (aborted || !exact)
+                return aborted ? 0 : Integer.signum(score);
+            // then the difference in pieces, with a window of only the scores on that side of 0
+            if (score > 0)
+                score = searchRoot(P, O, n, score - 1, INFINITY);
+            else if (score < 0)
+                score = searchRoot(P, O, n, -INFINITY, score + 1);
+            else
+                return 0;
+            if (aborted)
+                return 0;
+            bestMove = rootMove;
+            return score;
+        }
+
+        /** searchRoot method
+         * - helper method for solve
+         * - searches the root like any other node, but keeps its best move in rootMove
+         * */
+        private int searchRoot (long P, long O, int n, int alpha, int beta){
+            rootMove = -1;
+            long moves = moves(P, O);
+            if (moves == 0)
+                return moves(O, P) == 0 ? finalScore(P, O) : -search(O, P, n, -beta, -alpha);
+            // the best move of the win/loss/draw search is tried first
+            int count = sortMoves(P, O, moves, n, bestMove);
+            int best = -INFINITY;
+            for (int i = 0; i < count; i++){
+                int x = nextMove(n, i, count);
+                long f = moveFlips[n][i];
+                long nextP = O & ~f;
+                long nextO = P | f | (1L << x);
+                int a = Math.max(alpha, best);
+                int score;
+                if (i == 0)
+                    score = -search(nextP, nextO, n-1, -beta, -a);
+                else {
+                    score = -search(nextP, nextO, n-1, -a-1, -a);
+                    if (score > a && score < beta)
+                        score = -search(nextP, nextO, n-1, -beta, -score);
+                }
+                if (aborted)
+                    return 0;
+                if (score > best){
+                    best = score;
+                    rootMove = x;
+                    if (best >= beta)
+                        break;
+                }
+            }
+            return best;
+        }
+
+        /** search method
+         * - the negamax alpha-beta search of the endgame
+         * @param P the pieces of the color to move
+         * @param O the pieces of the other color
+         * @param n the number of empty squares
+         * @return the difference in pieces for the color to move, or a bound of it outside of alpha and beta
+         * */
+        private int search (long P, long O, int n, int alpha, int beta){
+            if (n <= 4)
+                return searchSmall(P, O, n, alpha, beta);
+            nodes++;
+            if ((nodes & 0xFFFF) == 0 && clock != null && clock.timeUp())
+                aborted = true;
+            if (aborted)
+                return 0;
+
+            // the other color's stable pieces can't be won back, which caps the score, and that's sometimes
+            // enough for a cutoff (only worth looking at if the other color has few enough pieces)
+            if (alpha >= 64 - 2*Long.bitCount(O)){
+                int most = 64 - 2*Long.bitCount(stable(O, P));
+                if (most <= alpha)
+                    return most;
+            }
+
+            long moves = moves(P, O);
+            if (moves == 0){
+                if (moves(O, P) == 0)
+                    return finalScore(P, O);
+                return -search(O, P, n, -beta, -alpha);
+            }
+
+            // the transposition table is only worth it with enough empty squares left
+            long key = 0;
+            int hashMove = -1;
+            if (n >= HASH_EMPTIES){
+                key = hash(P, O);
+                long entry = table.probe(key);
+                if (entry != 0){
+                    hashMove = TranspositionTable.move(entry);
+                    int score = TranspositionTable.score(entry);
+                    int bound = TranspositionTable.bound(entry);
+                    if (bound == TranspositionTable.EXACT)
+                        return score;
+                    // a bound that doesn't cut off still makes the window smaller
+                    if (bound == TranspositionTable.LOWER)
+                        alpha = Math.max(alpha, score);
+                    else
+                        beta = Math.min(beta, score);
+                    if (alpha >= beta)
+                        return score;
+                }
+            }
+
+            int alphaStart = alpha;
+            int best = -INFINITY;
+            int bestSquare = -1;
+            if (n >= SORT_EMPTIES){
+                // fastest first: the moves that leave the opponent the fewest moves are tried first
+                int count = sortMoves(P, O, moves, n, hashMove);
+                for (int i = 0; i < count; i++){
+                    int x = nextMove(n, i, count);
+                    long f = moveFlips[n][i];
+                    long nextP = O & ~f;
+                    long nextO = P | f | (1L << x);
+                    int a = Math.max(alpha, best);
+                    int score;
+                    // the first move is searched with the full window, the others only have to be shown to be
+                    // worse, and are searched again if they aren't
+                    if (i == 0)
+                        score = -search(nextP, nextO, n-1, -beta, -a);
+                    else {
+                        score = -search(nextP, nextO, n-1, -a-1, -a);
+                        if (score > a && score < beta)
+                            score = -search(nextP, nextO, n-1, -beta, -score);
+                    }
+                    if (score > best){
+                        best = score;
+                        bestSquare = x;
+                        if (best >= beta)
+                            break;
+                    }
+                }
+            }
+            else {
+                // with few empties, sorting costs more than it saves, so only the parity is used
+                long odd = oddRegions(~(P | O));
+                for (int pass = 0; pass < 2 && best < beta; pass++){
+                    for (long m = moves & (pass == 0 ? odd : ~odd); m != 0; m &= m - 1){
+                        int x = Long.numberOfTrailingZeros(m);
+                        long f = flips(x, P, O);
+                        int score = -search(O & ~f, P | f | (1L << x), n-1, -beta, -Math.max(alpha, best));
+                        if (score > best){
+                            best = score;
+                            bestSquare = x;
+                            if (best >= beta)
+                                break;
+                        }
+                    }
+                }
+            }
+
+            if (n >= HASH_EMPTIES && !aborted){
+                int bound = best >= beta ? TranspositionTable.LOWER
+                        : best <= alphaStart ? TranspositionTable.UPPER : TranspositionTable.EXACT;
+                table.store(key, n, bound, best, bestSquare);
+            }
+            return best;
+        }
+
+        /** searchSmall method
+         * - the search of the last 4 empty squares
+         * - instead of finding the moves, it tries the empty squares themselves, odd regions first
+         * */
+        private int searchSmall (long P, long O, int n, int alpha, int beta){
+            nodes++;
+            long empty = ~(P | O);
+            if (n == 1)
+                return lastOne(P, O, Long.numberOfTrailingZeros(empty));
+
+            int best = -INFINITY;
+            boolean moved = false;
+            long odd = oddRegions(empty);
+            for (int pass = 0; pass < 2; pass++){
+                for (long e = empty & (pass == 0 ? odd : ~odd); e != 0; e &= e - 1){
+                    int x = Long.numberOfTrailingZeros(e);
+                    // a move has to be next to one of the other color's pieces
+                    if ((NEIGHBORS[x] & O) == 0)
+                        continue;
+                    long f = flips(x, P, O);
+                    if (f == 0)
+                        continue;
+                    moved = true;
+                    long bit = 1L << x;
+                    // with 2 empty squares the last one is counted here, without another call to searchSmall
+                    int score = n == 2 ? -lastOne(O & ~f, P | f | bit, Long.numberOfTrailingZeros(empty & ~bit))
+                            : -searchSmall(O & ~f, P | f | bit, n-1, -beta, -Math.max(alpha, best));
+                    if (score > best){
+                        best = score;
+                        if (best >= beta)
+                            return best;
+                    }
+                }
+            }
+            if (!moved){
+                // color has to pass, or the game is over
+                if (moves(O, P) == 0)
+                    return finalScore(P, O);
+                return -searchSmall(O, P, n, -beta, -alpha);
+            }
+            return best;
+        }
+
+        /** lastOne method
+         * - the result of the game with one empty square x left, without any searching
+         * */
+        private static int lastOne (long P, long O, int x){
+            int pieces = Long.bitCount(P);
+            long f = (NEIGHBORS[x] & O) != 0 ? flips(x, P, O) : 0;
+            if (f != 0)
+                return 2*(pieces + Long.bitCount(f) + 1) - 64;
+            // color has to pass, so the other color gets the square if it can
+            f = (NEIGHBORS[x] & P) != 0 ? flips(x, O, P) : 0;
+            if (f != 0)
+                return 2*(pieces - Long.bitCount(f)) - 64;
+            // nobody can move, the empty square goes to the winner
+            int difference = 2*pieces - 63;
+            return difference > 0 ? difference + 1 : difference - 1;
+        }
+
+        /** sortMoves method
+         * - helper method for search
+         * - puts the moves in moveList[n] with their flips, scored by how many moves the opponent would have
+         * @return the number of moves
+         * */
+        private int sortMoves (long P, long O, long moves, int n, int hashMove){
+            long odd = oddRegions(~(P | O));
+            int count = 0;
+            for (long m = moves; m != 0; m &= m - 1){
+                int x = Long.numberOfTrailingZeros(m);
+                long f = flips(x, P, O);
+                long bit = 1L << x;
+                int score;
+                if (x == hashMove)
+                    score = -1000;
+                else {
+                    score = Long.bitCount(moves(O & ~f, P | f | bit)) * 16;
+                    if ((bit & CORNERS) != 0)
+                        score -= 8;
+                    if ((bit & odd) != 0)
+                        score -= 4;
+                }
+                moveList[n][count] = x;
+                moveFlips[n][count] = f;
+                moveScore[n][count] = score;
+                count++;
+            }
+            return count;
+        }
+
+        /** nextMove method
+         * - helper method for search
+         * - swaps the move with the lowest score from i on into i, with its flips
+         * */
+        private int nextMove (int n, int i, int count){
+            int[] list = moveList[n];
+            int[] scores = moveScore[n];
+            long[] flips = moveFlips[n];
+            int best = i;
+            for (int j = i+1; j < count; j++){
+                if (scores[j] < scores[best])
+                    best = j;
+            }
+            int x = list[best];
+            int score = scores[best];
+            long f = flips[best];
+            list[best] = list[i];
+            scores[best] = scores[i];
+            flips[best] = flips[i];
+            list[i] = x;
+            scores[i] = score;
+            flips[i] = f;
+            return x;
+        }
+
+        /** oddRegions method
+         * @param empty the empty squares
+         * @return the empty squares of the quadrants with an odd number of empty squares
+         * */
+        private static long oddRegions (long empty){
+            long ret = 0;
+            for (long q : QUADRANTS){
+                if ((Long.bitCount(empty & q) & 1) != 0)
+                    ret |= q;
+            }
+            return ret & empty;
+        }
+
+        /** stable method
+         * - finds pieces that can never be flipped: in each of the 4 lines through the piece, the line is full
+         *   or the piece is next to the edge or to a stable piece of its own color
+         * @param O the pieces to check
+         * @param P the pieces of the other color
+         * @return the stable pieces of O
+         * */
+        static long stable (long O, long P){
+            long filled = O | P;
+            // the full rows, columns and diagonals
+            long rows = 0;
+            for (int r = 0; r < 64; r += 8){
+                if (((filled >>> r) & 0xFF) == 0xFF)
+                    rows |= 0xFFL << r;
+            }
+            long c = filled & (filled >>> 32);
+            c &= c >>> 16;
+            c &= c >>> 8;
+            long columns = (c & 0xFF) * 0x0101010101010101L;
+            long diagonals9 = 0, diagonals7 = 0;
+            for (long d : DIAGONALS9){
+                if ((filled & d) == d)
+                    diagonals9 |= d;
+            }
+            for (long d : DIAGONALS7){
+                if ((filled & d) == d)
+                    diagonals7 |= d;
+            }
+
+            long stable = 0, old;
+            do {
+                old = stable;
+                long h = rows | EDGE_COLUMNS | ((stable << 1) & NOT_A) | ((stable >>> 1) & NOT_H);
+                long v = columns | EDGE_ROWS | (stable << 8) | (stable >>> 8);
+                long d9 = diagonals9 | EDGES | ((stable << 9) & NOT_A) | ((stable >>> 9) & NOT_H);
+                long d7 = diagonals7 | EDGES | ((stable << 7) & NOT_H) | ((stable >>> 7) & NOT_A);
+                stable = O & h & v & d9 & d7;
+            } while (stable != old);
+            return stable;
+        }
+
+        /** diagonals method
+         * - makes the masks of the diagonals going one step at a time by shift, for the stable pieces
+         * */
+        private static long[] diagonals (int shift){
+            ArrayList<Long> ret = new ArrayList<>();
+            for (int start = 0; start < 64; start++){
+                int row = start / 8, col = start % 8;
+                // a diagonal starts on the first row, or on the column it can't have come from
+                if (row != 0 && col != (shift == 9 ? 0 : 7))
+                    continue;
+                long d = 0;
+                for (int r = row, cl = col; r < 8 && cl >= 0 && cl < 8; r++, cl += shift == 9 ? 1 : -1)
+                    d |= 1L << (r*8 + cl);
+                ret.add(d);
+            }
+            long[] masks = new long[ret.size()];
+            for (int i = 0; i < masks.length; i++)
+                masks[i] = ret.get(i);
+            return masks;
+        }
+
+        /** finalScore method
+         * - the difference in pieces at the end of the game, the empty squares go to the winner
+         * */
+        private static int finalScore (long P, long O){
+            int p = Long.bitCount(P);
+            int o = Long.bitCount(O);
+            int empty = 64 - p - o;
+            if (p > o)
+                return p - o + empty;
+            if (p < o)
+                return p - o - empty;
+            return 0;
+        }
+
+        /** hash method
+         * - a key for the transposition table from the pieces of the color to move and the other color
+         * */
+        private static long hash (long P, long O){
+            long h = P * 0x9E3779B97F4A7C15L + Long.rotateLeft(O * 0xC2B2AE3D27D4EB4FL, 31);
+            h ^= h >>> 29;
+            h *= 0xBF58476D1CE4E5B9L;
+            return h ^ (h >>> 32);
+        }
+
+        /** moves method
+         * - the same as BitBoard.possibleMoves, with the masks of the 8x8 board written in
+         * */
+        static long moves (long P, long O){
+            long empty = ~(P | O);
+            long h = O & NOT_A;     // the opposite pieces a fill going towards "h" can go over
+            long a = O & NOT_H;     // the opposite pieces a fill going towards "a" can go over
+            long ret = ((fillUp(P, h, 1) & O) << 1) & NOT_A;
+            ret |= (fillUp(P, O, 8) & O) << 8;
+            ret |= ((fillUp(P, h, 9) & O) << 9) & NOT_A;
+            ret |= ((fillUp(P, a, 7) & O) << 7) & NOT_H;
+            ret |= ((fillDown(P, a, 1) & O) >>> 1) & NOT_H;
+            ret |= (fillDown(P, O, 8) & O) >>> 8;
+            ret |= ((fillDown(P, a, 9) & O) >>> 9) & NOT_H;
+            ret |= ((fillDown(P, h, 7) & O) >>> 7) & NOT_A;
+            return ret & empty;
+        }
+
+        private static long fillUp (long gen, long pro, int shift){
+            gen |= pro & (gen << shift);
+            pro &= pro << shift;
+            gen |= pro & (gen << 2*shift);
+            pro &= pro << 2*shift;
+            gen |= pro & (gen << 4*shift);
+            return gen;
+        }
+
+        private static long fillDown (long gen, long pro, int shift){
+            gen |= pro & (gen >>> shift);
+            pro &= pro >>> shift;
+            gen |= pro & (gen >>> 2*shift);
+            pro &= pro >>> 2*shift;
+            gen |= pro & (gen >>> 4*shift);
+            return gen;
+        }
+
+        /** flips method
+         * - the same as BitBoard.flips, but without loops: the first square on each ray from x that isn't
+         *   an opposite piece is found with one bit trick, and if it is one of ours, the ray up to it flips
+         * */
+        static long flips (int x, long P, long O){
+            long[] rays = RAYS[x];
+            long ret = 0;
+            // the rays going to bigger squares end on their lowest square that isn't the other color's
+            for (int d = 0; d < 4; d++){
+                long blocker = rays[d] & ~O;
+                blocker &= -blocker;
+                if ((blocker & P) != 0)
+                    ret |= rays[d] & (blocker - 1);
+            }
+            // the rays going to smaller squares end on their highest one
+            for (int d = 4; d < 8; d++){
+                long blocker = Long.highestOneBit(rays[d] & ~O);
+                if ((blocker & P) != 0)
+                    ret |= rays[d] & -(blocker << 1);
+            }
+            return ret;
+        }
+
+        /** neighbors method
+         * - makes the squares next to every square, a move is only possible next to a piece of the other color
+         * */
+        private static long[] neighbors (){
+            long[] ret = new long[64];
+            for (int sq = 0; sq < 64; sq++){
+                long bit = 1L << sq;
+                ret[sq] = ((bit << 1) & NOT_A) | ((bit >>> 1) & NOT_H) | (bit << 8) | (bit >>> 8)
+                        | ((bit << 9) & NOT_A) | ((bit >>> 9) & NOT_H) | ((bit << 7) & NOT_H) | ((bit >>> 7) & NOT_A);
+            }
+            return ret;
+        }
+
+        /** rays method
+         * - makes the squares going out from every square in the 8 directions, for flips
+         * - the first 4 go to bigger squares ("h", "h" and up, up, "a" and up), the last 4 the other way
+         * */
+        private static long[][] rays (){
+            int[][] steps = new int[][]{{0, 1}, {1, 1}, {1, 0}, {1, -1}, {0, -1}, {-1, -1}, {-1, 0}, {-1, 1}};
+            long[][] ret = new long[64][8];
+            for (int sq = 0; sq < 64; sq++){
+                for (int d = 0; d < 8; d++){
+                    int r = sq / 8 + steps[d][0], c = sq % 8 + steps[d][1];
+                    for (; r >= 0 && r < 8 && c >= 0 && c < 8; r += steps[d][0], c += steps[d][1])
+                        ret[sq][d] |= 1L << (r*8 + c);
+                }
+            }
+            return ret;
+        }
+
+        /** benchmark method
+         * - solves random positions with a number of empty squares and prints the times
+         * @param empties the number of empty squares
+         * */
+        public static void benchmark (int empties){
+            EndgameSolver solver = new EndgameSolver(option("hash", 64));
+            ArrayList<Node> positions = randomPositions(10, 60 - empties, 60);
+            System.out.println("position  win/loss/draw  time(ms)  nodes  exact  time(ms)  nodes");
+            long wldTime = 0, exactTime = 0, slowest = 0;
+            for (int i = 0; i < positions.size(); i++){
+                Board b = positions.get(i).state;
+                BitBoard position = new BitBoard(b);
+                solver.table.clear();
+                long start = System.nanoTime();
+                int wld = solver.solve(position, b.currentPlayer, false, null);
+                long time1 = (System.nanoTime() - start) / 1000000;
+                long nodes1 = solver.nodes;
+                solver.table.clear();
+                start = System.nanoTime();
+                int exact = solver.solve(position, b.currentPlayer, true, null);
+                long time2 = (System.nanoTime() - start) / 1000000;
+                wldTime += time1;
+                exactTime += time2;
+                slowest = Math.max(slowest, time2);
+                System.out.printf("%8d  %13d  %8d  %5d  %5d  %8d  %5d%n", i, wld, time1, nodes1, exact, time2, solver.nodes);
+            }
+            System.out.printf("%d empties: win/loss/draw %d ms on average, exact %d ms on average and %d ms at most%n",
+                    empties, wldTime / positions.size(), exactTime / positions.size(), slowest);
+        }
+    }
+
+    // Solved4x4 Class
+    static class Solved4x4 {
+        static final int MAGIC = 0x52345834;    // "R4X4", the start of every table file
+        static final int VERSION = 2;           // changes when the layout of the file changes
+        static final int HEADER = 16;           // the magic, version, capacity and count ints
+        static final int RECORD = 6;            // the int code, byte value and byte move of a position
+        static final int EMPTY = -1;            // the code of a free slot, no position has it
+        static final int INFINITY = 100;        // bigger than any difference in pieces
+        static final int[] BASE3 = base3();     // BASE3[bits] is the sum of 3^i for the bits i of a byte
+
+        ByteBuffer buffer;  // the table, usually memory-mapped from the file
+        int capacity;       // the number of slots, a power of two
+        int count;          // the number of positions in the table
+
+        // the table while it is being built, before it is written to a file
+        int[] codes;
+        byte[] values;
+        byte[] moves;
+
+        /** Solved4x4 constructor class
+         * - for a table that is being built
+         * */
+        private Solved4x4 (){
+            capacity = 1 << 16;
+            codes = new int[capacity];
+            Arrays.fill(codes, EMPTY);
+            values = new byte[capacity];
+            moves = new byte[capacity];
+        }
+
+        /** Solved4x4 constructor class with a buffer
+         * @param buffer the bytes of a table file
+         * @throws IOException if the buffer isn't a table of this version
+         * */
+        private Solved4x4 (ByteBuffer buffer) throws IOException {
+            if (buffer.capacity() < HEADER || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION)
+                throw new IOException("not a version " + VERSION + " 4x4 table");
+            this.buffer = buffer;
+            capacity = buffer.getInt(8);
+            count = buffer.getInt(12);
+            if (Integer.bitCount(capacity) != 1 || buffer.capacity() != HEADER + (long) capacity * RECORD)
+                throw new IOException("the 4x4 table is the wrong size");
+        }
+
+        /** load method
+         * - maps a table file into memory, and solves the game and writes the file first if there isn't one
+         * @param path the table file
+         * @return the table
+         * @throws IOException if the file can't be read or written
+         * */
+        public static Solved4x4 load (Path path) throws IOException {
+            if (!Files.exists(path) || isOldVersion(path))
+                build().write(path);
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)){
+                return new Solved4x4(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+            }
+        }
+
+        /** isOldVersion method
+         * - helper method for load
+         * @return true if the file is a table made by an older version, which is made again
+         * */
+        private static boolean isOldVersion (Path path) throws IOException {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)){
+                ByteBuffer header = ByteBuffer.allocate(8);
+                channel.read(header, 0);
+                return header.getInt(0) == MAGIC && header.getInt(4) < VERSION;
+            }
+        }
+
+        /** build method
+         * - solves every position that can be reached from the start of a 4x4 game, with either color first
+         * @return the table, in memory
+         * */
+        public static Solved4x4 build (){
+            Solved4x4 table = new Solved4x4();
+            BitBoard b = new BitBoard(false);
+            table.solve(b, 0);
+            table.solve(b, 1);
+            return table;
+        }
+
+        /** solve method
+         * - helper method for build
+         * - a plain negamax that remembers every position, so each one is only searched once
+         * - a position and its turns have the same value, so only the canonical form is kept (see Symmetry),
+         *   with the best move turned the same way
+         * @return the difference in pieces at the end of the game for color with perfect play
+         * */
+        private int solve (BitBoard b, int color){
+            int turn = Symmetry.canonical(b.black, b.white, 4);
+            int code = encode(Symmetry.transform(b.black, turn, 4), Symmetry.transform(b.white, turn, 4), color);
+            int slot = slot(code);
+            if (codes[slot] == code)
+                return values[slot];
+
+            int other = (color+1)%2;
+            int best;
+            int bestMove = -1;
+            long possible = b.possibleMoves(color);
+            if (possible == 0){
+                // if neither side has any available moves, the game is over, otherwise the other side moves again
+                if (b.possibleMoves(other) == 0)
+                    best = b.numSquares(color) - b.numSquares(other);
+                else
+                    best = -solve(b, other);
+            }
+            else {
+                best = -INFINITY;
+                for (long m = possible; m != 0; m &= m - 1){
+                    int a = Long.numberOfTrailingZeros(m);
+                    long flipped = b.makeMove(a, color);
+                    int score = -solve(b, other);
+                    b.unmakeMove(a, color, flipped);
+                    if (score > best){
+                        best = score;
+                        bestMove = a;
+                    }
+                }
+            }
+            // the table could have grown while the moves were searched
+            if (2*(count+1) > capacity)
+                grow();
+            slot = slot(code);
+            codes[slot] = code;
+            values[slot] = (byte) best;
+            moves[slot] = (byte) Symmetry.square(bestMove, turn, 4);
+            count++;
+            return best;
+        }
+
+        /** grow method
+         * - helper method for solve
+         * - doubles the slots, so the table is never more than half full
+         * */
+        private void grow (){
+            int[] oldCodes = codes;
+            byte[] oldValues = values;
+            byte[] oldMoves = moves;
+            capacity *= 2;
+            codes = new int[capacity];
+            Arrays.fill(codes, EMPTY);
+            values = new byte[capacity];
+            moves = new byte[capacity];
+            for (int i = 0; i < oldCodes.length; i++){
+                if (oldCodes[i] != EMPTY){
+                    int slot = slot(oldCodes[i]);
+                    codes[slot] = oldCodes[i];
+                    values[slot] = oldValues[i];
+                    moves[slot] = oldMoves[i];
+                }
+            }
+        }
+
+        /** slot method
+         * - helper method for the table being built
+         * @return the slot of code, or the free slot it would go in
+         * */
+        private int slot (int code){
+            int i = hash(code) & (capacity - 1);
+            while (codes[i] != EMPTY && codes[i] != code)
+                i = (i + 1) & (capacity - 1);
+            return i;
+        }
+
+        /** write method
+         * - writes the table as the header and then the slots, in the order they are in memory
+         * @param path the table file
+         * @throws IOException if the file can't be written
+         * */
+        public void write (Path path) throws IOException {
+            ByteBuffer out = ByteBuffer.allocate(HEADER + capacity * RECORD);
+            out.putInt(MAGIC).putInt(VERSION).putInt(capacity).putInt(count);
+            for (int i = 0; i < capacity; i++)
+                out.putInt(codes[i]).put(values[i]).put(moves[i]);
+            out.flip();
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)){
+                while (out.hasRemaining())
+                    channel.write(out);
+            }
+        }
+
+        /** probe method
+         * - finds a position in the table
+         * @param b the 4x4 board
+         * @param color the color to move
+         * @return the slot of the position, or -1 if it isn't in the table
+         * */
+        public int probe (BitBoard b, int color){
+            int turn = Symmetry.canonical(b.black, b.white, 4);
+            int code = encode(Symmetry.transform(b.black, turn, 4), Symmetry.transform(b.white, turn, 4), color);
+            int i = hash(code) & (capacity - 1);
+            while (true){
+                int c = buffer.getInt(HEADER + i * RECORD);
+                if (c == code)
+                    return i;
+                if (c == EMPTY)
+                    return -1;
+                i = (i + 1) & (capacity - 1);
+            }
+        }
+
+        /** value method
+         * @return the difference in pieces at the end of the game for the color to move, with perfect play
+         * */
+        public int value (int slot){
+            return buffer.get(HEADER + slot * RECORD + 4);
+        }
+
+        /** move method
+         * @return the best move of the canonical form of the position, or -1 if the color to move has to pass
+         * */
+        public int move (int slot){
+            return buffer.get(HEADER + slot * RECORD + 5);
+        }
+
+        /** move method
+         * @param slot the slot probe found for the board
+         * @param b the board
+         * @return the best move of the board, or -1 if the color to move has to pass
+         * */
+        public int move (int slot, BitBoard b){
+            return Symmetry.inverse(move(slot), Symmetry.canonical(b.black, b.white, 4), 4);
+        }
+
+        /** encode method
+         * - the board as a base 3 number (0 empty, 1 black, 2 white for each of the 16 squares), times 2,
+         *   plus the color to move, which is less than 2^27
+         * */
+        static int encode (long black, long white, int color){
+            int low = BASE3[(int) black & 0xFF] + 2*BASE3[(int) white & 0xFF];
+            int high = BASE3[(int) (black >>> 8) & 0xFF] + 2*BASE3[(int) (white >>> 8) & 0xFF];
+            return (high * 6561 + low) << 1 | color;
+        }
+
+        private static int hash (int code){
+            int h = code * 0x9E3779B1;
+            return h ^ (h >>> 15);
+        }
+
+        private static int[] base3 (){
+            int[] ret = new int[256];
+            for (int bits = 0; bits < 256; bits++){
+                int power = 1;
+                for (int i = 0; i < 8; i++, power *= 3){
+                    if ((bits & (1 << i)) != 0)
+                        ret[bits] += power;
+                }
+            }
+            return ret;
+        }
+
+        /** buildTool method
+         * - solves the 4x4 game, writes the table file and prints what it found
+         * @param path the table file
+         * */
+        public static void buildTool (Path path) throws IOException {
+            long start = System.nanoTime();
+            Solved4x4 built = build();
+            long time = (System.nanoTime() - start) / 1000000;
+            built.write(path);
+            Solved4x4 table = load(path);
+            System.out.printf("%d positions solved in %d ms, %s is %d bytes%n", table.count, time, path,
+                    Files.size(path));
+            BitBoard b = new BitBoard(false);
+            for (int color = 0; color < 2; color++){
+                int slot = table.probe(b, color);
+                System.out.printf("the start with %s to move: %+d for %s, best move %s%n", color == 0 ? "black" : "white",
+                        table.value(slot), color == 0 ? "black" : "white", b.location(table.move(slot, b)));
+            }
+        }
+    }
+
+    // Benchmark Class
+    static class Benchmark {
+        ArrayList<Node> corpus;     // the fixed midgame positions every benchmark runs over
+        String filter;              // only the benchmarks whose name starts with this are run
+        int warmups;                // the iterations that only warm up the JIT
+        int iterations;             // the iterations that are measured
+        long iterationTime;         // how long each iteration runs, in ms
+        long sink;                  // every result goes in here, so the JIT can't throw the work away
+
+        /** Benchmark constructor class
+         * @param filter only the benchmarks whose name starts with this are run, "" for all of them
+         * @param warmups the iterations that only warm up the JIT
+         * @param iterations the iterations that are measured
+         * @param iterationTime how long each iteration runs, in ms
+         * */
+        public Benchmark (String filter, int warmups, int iterations, long iterationTime){
+            this.filter = filter;
+            this.warmups = warmups;
+            this.iterations = iterations;
+            this.iterationTime = iterationTime;
+            // 64 positions after 20 random moves, the same every time
+            corpus = randomPositions(64, 20, 2024);
+        }
+
+        /** run method
+         * - runs the micro benchmarks over the corpus and then the fixed-depth searches
+         * - every benchmark prints one JSON line, so the results can be collected from release to release
+         * @param depth the depth of the search benchmarks
+         * */
+        public void run (int depth){
+            BitBoard[] boards = new BitBoard[corpus.size()];
+            int[] colors = new int[corpus.size()];
+            for (int i = 0; i < boards.length; i++){
+                boards[i] = new BitBoard(corpus.get(i).state);
+                boards[i].enableFeatures();
+                colors[i] = corpus.get(i).state.currentPlayer;
+            }
+
+            measure("movegen.bitboard", "positions", () -> {
+                for (int i = 0; i < boards.length; i++)
+                    sink += boards[i].possibleMoves(colors[i]);
+                return boards.length;
+            });
+            measure("movegen.board", "positions", () -> {
+                for (Node position : corpus){
+                    Board b = position.state;
+                    sink += b.possibleMoves(b, b.currentPlayer).size();
+                }
+                return corpus.size();
+            });
+            measure("makemove.bitboard", "moves", () -> {
+                long count = 0;
+                for (int i = 0; i < boards.length; i++){
+                    for (long m = boards[i].possibleMoves(colors[i]); m != 0; m &= m - 1){
+                        int a = Long.numberOfTrailingZeros(m);
+                        long flipped = boards[i].makeMove(a, colors[i]);
+                        sink += boards[i].hash;
+                        boards[i].unmakeMove(a, colors[i], flipped);
+                        count++;
+                    }
+                }
+                return count;
+            });
+            measure("makemove.board", "moves", () -> {
+                long count = 0;
+                for (Node position : corpus){
+                    Board b = position.state;
+                    for (String a : b.possibleMoves(b, b.currentPlayer).keySet()){
+                        sink += b.move(b, a, b.currentPlayer).board.length;
+                        count++;
+                    }
+                }
+                return count;
+            });
+            algorithm8x8 evaluator = new algorithm8x8(corpus.get(0), 1, null);
+            measure("eval", "positions", () -> {
+                for (int i = 0; i < boards.length; i++){
+                    evaluator.position.copyFrom(boards[i]);
+                    sink += evaluator.eval(colors[i]);
+                }
+                return boards.length;
+            });
+            algorithm8x8 simple = new algorithm8x8(corpus.get(0), 1, null);
+            simple.patterns = null;
+            measure("eval.simple", "positions", () -> {
+                for (int i = 0; i < boards.length; i++){
+                    simple.position.copyFrom(boards[i]);
+                    sink += simple.eval(colors[i]);
+                }
+                return boards.length;
+            });
+            // the searches are measured in nodes, over the first 8 positions with an empty table every time
+            List<Node> searched = corpus.subList(0, 8);
+            TranspositionTable table = new TranspositionTable(4);
+            measure("search.depth" + depth, "nodes", () -> {
+                long nodes = 0;
+                for (Node position : searched){
+                    Board b = position.state;
+                    table.clear();
+                    algorithm8x8 search = new algorithm8x8(position, depth, table);
+                    sink += search.hAlphaBetaSearch(position, b.possibleMoves(b, b.currentPlayer).keySet());
+                    nodes += search.nodes;
+                }
+                return nodes;
+            });
+            measure("search.depth" + depth + ".notable", "nodes", () -> {
+                long nodes = 0;
+                for (Node position : searched){
+                    Board b = position.state;
+                    algorithm8x8 search = new algorithm8x8(position, depth, null);
+                    sink += search.hAlphaBetaSearch(position, b.possibleMoves(b, b.currentPlayer).keySet());
+                    nodes += search.nodes;
+                }
+                return nodes;
+            });
+            if (sink == 42)
+                System.out.println();
+        }
+
+        /** searchBenchmark method
+         * - searches the corpus to the same depth with iterative deepening and plain alpha-beta (every move with the
+         *   whole window, every depth with the whole window), with principal variation search, and with principal
+         *   variation search and aspiration windows (--aspiration), and prints the nodes and times of each
+         * - every position starts with an empty table and ProbCut is off, so the searches only differ in their windows;
+         *   the scores can still be different now and then, since a table entry from a narrower window can be used
+         *   at a node a plain search would have searched again
+         * @param depth the depth to search each position to
+         * */
+        public void searchBenchmark (int depth){
+            String[] names = new String[]{"alpha-beta", "pvs", "pvs+aspiration"};
+            long[] nodes = new long[names.length], time = new long[names.length];
+            int[][] scores = new int[names.length][corpus.size()];
+            TranspositionTable table = new TranspositionTable(16);
+            System.out.println("position    alpha-beta           pvs  pvs+aspiration  (nodes)");
+            for (int i = 0; i < corpus.size(); i++){
+                Node position = corpus.get(i);
+                Board b = position.state;
+                long[] positionNodes = new long[names.length];
+                for (int v = 0; v < names.length; v++){
+                    table.clear();
+                    algorithm8x8 search = new algorithm8x8(position, depth, table);
+                    search.probCut = null;
+                    // the aspiration windows are --aspiration wide
+                    search.pvs = v > 0;
+                    if (v < 2)
+                        search.aspiration = 0;
+                    TimeControl clock = new TimeControl(Long.MAX_VALUE / 4);
+                    clock.startMove(b.numSquares(b.board, " "));
+                    long start = System.nanoTime();
+                    scores[v][i] = search.iterativeDeepening(position, b.possibleMoves(b, b.currentPlayer).keySet(), clock);
+                    time[v] += System.nanoTime() - start;
+                    positionNodes[v] = search.nodes;
+                    nodes[v] += search.nodes;
+                }
+                System.out.printf("%8d  %12d  %12d  %14d%n", i, positionNodes[0], positionNodes[1], positionNodes[2]);
+            }
+            System.out.println("depth " + depth + ", " + corpus.size() + " positions:");
+            for (int v = 0; v < names.length; v++){
+                int same = 0;
+                for (int i = 0; i < corpus.size(); i++)
+                    same += scores[v][i] == scores[0][i] ? 1 : 0;
+                System.out.printf("  %-15s %12d nodes (%5.1f%%)  %6d ms  %d/%d scores the same as alpha-beta%n", names[v], nodes[v],
+                        100.0 * nodes[v] / nodes[0], time[v] / 1000000, same, corpus.size());
+            }
+        }
+
+        /** measure method
+         * - runs body over and over for the warmup and measured iterations, like JMH's throughput mode
+         * - the bytes the thread allocates are counted with com.sun.management.ThreadMXBean, like -prof gc
+         * @param name the name of the benchmark
+         * @param unit what body counts
+         * @param body runs the benchmark once and returns how many units it did
+         * */
+        private void measure (String name, String unit, LongSupplier body){
+            if (!name.startsWith(filter))
+                return;
+            java.lang.management.ThreadMXBean threads = java.lang.management.ManagementFactory.getThreadMXBean();
+            com.sun.management.ThreadMXBean allocation = threads instanceof com.sun.management.ThreadMXBean t ? t : null;
+            long thread = Thread.currentThread().getId();
+
+            double[] scores = new double[iterations];
+            long units = 0;
+            long bytes = 0;
+            for (int i = -warmups; i < iterations; i++){
+                long count = 0;
+                long allocated = allocation != null ? allocation.getThreadAllocatedBytes(thread) : 0;
+                long start = System.nanoTime();
+                long end = start + iterationTime * 1000000;
+                long now;
+                do {
+                    count += body.getAsLong();
+                    now = System.nanoTime();
+                } while (now < end);
+                if (i < 0)
+                    continue;
+                scores[i] = count * 1e9 / (now - start);
+                units += count;
+                if (allocation != null)
+                    bytes += allocation.getThreadAllocatedBytes(thread) - allocated;
+            }
+
+            double mean = 0;
+            for (double score : scores)
+                mean += score / iterations;
+            double variance = 0;
+            for (double score : scores)
+                variance += (score - mean) * (score - mean) / Math.max(1, iterations - 1);
+            System.out.printf(Locale.ROOT, "{\"benchmark\":\"%s\",\"mode\":\"thrpt\",\"unit\":\"%s/s\",\"score\":%.1f,"
+                            + "\"stdev\":%.1f,\"iterations\":%d,\"threads\":1,\"perCore\":%.1f,\"allocBytesPerUnit\":%s,"
+                            + "\"cores\":%d,\"java\":\"%s\"}%n",
+                    name, unit, mean, Math.sqrt(variance), iterations, mean,
+                    allocation != null ? String.format(Locale.ROOT, "%.1f", (double) bytes / Math.max(1, units)) : "null",
+                    Runtime.getRuntime().availableProcessors(), System.getProperty("java.version"));
+        }
+    }
+
+    // Perft Class
+    static class Perft {
+        // the number of leaves at each depth from the start, with a pass counted as a move and a game that ends
+        // early counted as one leaf, found with the BitBoard and the Board agreeing
+        static final long[] START_8X8 = new long[]{1, 4, 12, 56, 244, 1396, 8200, 55092, 390216, 3005288, 24571284,
+                212258800};
+        static final long[] START_4X4 = new long[]{1, 4, 12, 44, 128, 424, 1256, 3624, 9116, 20044, 36540, 50704,
+                57436, 59564, 59980, 60060};
+
+        boolean bulk;       // count the moves of the last depth instead of making them
+        long nodes;         // the number of positions made, for nodes/sec
+
+        /** Perft constructor class
+         * @param bulk count the moves of the last depth instead of making them
+         * */
+        public Perft (boolean bulk){
+            this.bulk = bulk;
+        }
+
+        /** perft method
+         * - counts the leaves of the game tree to a depth
+         * @param b the board, it is given back the same
+         * @param depth the number of moves
+         * @param color the color to move
+         * @return the number of positions depth moves (or passes) away, and of the games that end before that
+         * */
+        public long perft (BitBoard b, int depth, int color){
+            nodes++;
+            if (depth == 0)
+                return 1;
+            int other = (color+1)%2;
+            long moves = b.possibleMoves(color);
+            if (moves == 0){
+                // the game is over, or the other color moves again, which counts as a move
+                if (b.possibleMoves(other) == 0)
+                    return 1;
+                return perft(b, depth-1, other);
+            }
+            if (bulk && depth == 1)
+                return Long.bitCount(moves);
+            long count = 0;
+            for (long m = moves; m != 0; m &= m - 1){
+                int a = Long.numberOfTrailingZeros(m);
+                long flipped = b.makeMove(a, color);
+                count += perft(b, depth-1, other);
+                b.unmakeMove(a, color, flipped);
+            }
+            return count;
+        }
+
+        /** legacy method
+         * - the same count with the Board class, which is slow but is the oracle for the BitBoard
+         * - passes are done here, since Board.move only prints that a color is out of moves
+         * */
+        public static long legacy (Board b, int depth, int color){
+            if (depth == 0)
+                return 1;
+            int other = (color+1)%2;
+            Set<String> moves = b.possibleMoves(b, color).keySet();
+            if (moves.isEmpty()){
+                if (b.possibleMoves(b, other).isEmpty())
+                    return 1;
+                return legacy(b, depth-1, other);
+            }
+            long count = 0;
+            for (String a : moves)
+                count += legacy(b.move(b, a, color), depth-1, other);
+            return count;
+        }
+
+        /** divide method
+         * - prints the count under every move of the root, to find which move a wrong count comes from
+         * */
+        public void divide (BitBoard b, int depth, int color){
+            long total = 0;
+            long moves = b.possibleMoves(color);
+            if (moves == 0){
+                System.out.println("pass " + (depth == 0 ? 1 : perft(b, depth, color)));
+                return;
+            }
+            for (long m = moves; m != 0; m &= m - 1){
+                int a = Long.numberOfTrailingZeros(m);
+                long flipped = b.makeMove(a, color);
+                long count = perft(b, depth-1, (color+1)%2);
+                b.unmakeMove(a, color, flipped);
+                System.out.println(b.location(a) + " " + count);
+                total += count;
+            }
+            System.out.println("total " + total);
+        }
+
+        /** parse method
+         * - makes a board from a string of the squares from "a1" on, row by row: B or X for black,
+         *   W or O for white and anything else for empty, 16 squares for 4x4 or 64 for 8x8
+         * @return the board, or null if the string is the wrong length
+         * */
+        public static Board parse (String squares, int color){
+            int size = squares.length() == 16 ? 4 : squares.length() == 64 ? 8 : 0;
+            if (size == 0)
+                return null;
+            String[][] board = new String[size][size];
+            for (int i = 0; i < squares.length(); i++){
+                char c = Character.toUpperCase(squares.charAt(i));
+                board[i / size][i % size] = c == 'B' || c == 'X' ? "B" : c == 'W' || c == 'O' ? "W" : " ";
+            }
+            return new Board(board, color, color);
+        }
+
+        /** check method
+         * - checks the BitBoard and the Board against the reference counts from the start of both games
+         * @param depth the deepest depth to check the Board at on 8x8, since it's slow
+         * @return true if every count is the same
+         * */
+        public static boolean check (int depth){
+            boolean ok = true;
+            for (boolean big : new boolean[]{true, false}){
+                long[] reference = big ? START_8X8 : START_4X4;
+                for (int d = 1; d < reference.length; d++){
+                    long bits = new Perft(true).perft(new BitBoard(big), d, 0);
+                    long slow = d <= depth || !big ? legacy(new Board(0, 0, big), d, 0) : -1;
+                    boolean same = bits == reference[d] && (slow < 0 || slow == reference[d]);
+                    ok &= same;
+                    System.out.printf("%s depth %2d: %12d  BitBoard %12d  Board %12s  %s%n", big ? "8x8" : "4x4", d,
+                            reference[d], bits, slow < 0 ? "-" : slow, same ? "ok" : "WRONG");
+                }
+            }
+            return ok;
+        }
+
+        /** run method
+         * - the --perft tool: counts from the start or from --position, for every depth up to depth
+         * */
+        public static void run (int depth){
+            int color = "W".equalsIgnoreCase(options.get("side")) ? 1 : 0;
+            Board start = options.containsKey("position") ? parse(options.get("position"), color)
+                    : new Board(color, color, !options.containsKey("small"));
+            if (start == null){
+                System.out.println("--position needs 16 or 64 squares");
+                return;
+            }
+            BitBoard b = new BitBoard(start);
+            if (options.containsKey("divide")){
+                new Perft(true).divide(b, depth, color);
+                return;
+            }
+            System.out.println("depth  leaves  time(ms)  leaves/sec  positions made/sec");
+            for (int d = 1; d <= depth; d++){
+                Perft perft = new Perft(!options.containsKey("nobulk"));
+                long begin = System.nanoTime();
+                long count = perft.perft(b, d, color);
+                long time = System.nanoTime() - begin;
+                System.out.printf("%5d  %d  %d  %.0f  %.0f%n", d, count, time / 1000000, count * 1e9 / Math.max(1, time),
+                        perft.nodes * 1e9 / Math.max(1, time));
+            }
+        }
+    }
+
+    /** SearchStatsMXBean interface
+     * - what the search statistics look like in JMX (jconsole, VisualVM...), under "ReversiAI:type=SearchStats"
+     * - the counters are the totals of every search since the program started, the rest is the last search
+     * */
+    public interface SearchStatsMXBean {
+        long getSearches();
+        long getNodes();
+        long getLeafEvaluations();
+        long getBetaCutoffs();
+        long getFirstMoveCutoffs();
+        long getProbCuts();
+        long getTableProbes();
+        long getTableHits();
+        long getTimeMillis();
+        int getLastDepth();
+        double getLastBranchingFactor();
+        long getLastTimeMillis();
+    }
+
+    // SearchStats Class
+    static class SearchStats implements SearchStatsMXBean {
+        static final SearchStats TOTAL = new SearchStats();    // every search added up, for JMX
+
+        // the counters are plain fields, since each search has its own SearchStats and only its thread
+        // counts in it, they are added up with add when the threads are done
+        long searches;          // the number of searches added up
+        long nodes;             // the positions searched
+        long leafEvaluations;   // the positions given to the evaluation function
+        long betaCutoffs;       // the positions where a move was too good for the opponent to allow
+        long firstMoveCutoffs;  // the cutoffs that came from the first move tried, which is what good ordering does
+        long probCuts;          // the subtrees ProbCut didn't search
+        long tableProbes;       // the positions looked up in the transposition table
+        long tableHits;         // the positions that were found there
+        long time;              // the time of the search, in ns
+        long startTime;         // System.nanoTime() when the search started
+        int depth;              // the deepest depth that finished
+        double branchingFactor; // of the last search, in the totals
+        long lastTime;          // the time of the last search in ns, in the totals
+        // the depth, nodes, time in ns and time since the start of the search of each finished depth
+        ArrayList<long[]> iterations = new ArrayList<>();
+
+        /** start method
+         * - clears the counters for a new search
+         * */
+        public void start (){
+            searches = 1;
+            nodes = leafEvaluations = betaCutoffs = firstMoveCutoffs = probCuts = tableProbes = tableHits = time = 0;
+            depth = 0;
+            iterations.clear();
+            startTime = System.nanoTime();
+        }
+
+        /** iteration method
+         * - keeps the nodes and time of a depth of an iterative deepening search
+         * @param depth the depth that finished
+         * @param totalNodes the nodes of the whole search so far
+         * */
+        public void iteration (int depth, long totalNodes){
+            long before = 0;
+            for (long[] i : iterations)
+                before += i[1];
+            long now = System.nanoTime() - startTime;
+            long earlier = iterations.isEmpty() ? 0 : iterations.get(iterations.size()-1)[3];
+            iterations.add(new long[]{depth, totalNodes - before, now - earlier, now});
+            this.depth = depth;
+        }
+
+        /** finish method
+         * - keeps the total nodes and time at the end of the search
+         * */
+        public void finish (long totalNodes){
+            nodes = totalNodes;
+            time = System.nanoTime() - startTime;
+        }
+
+        /** add method
+         * - adds the counters of another thread's search to these, the depths and times stay the same
+         * */
+        public void add (SearchStats other){
+            nodes += other.nodes;
+            leafEvaluations += other.leafEvaluations;
+            betaCutoffs += other.betaCutoffs;
+            firstMoveCutoffs += other.firstMoveCutoffs;
+            probCuts += other.probCuts;
+            tableProbes += other.tableProbes;
+            tableHits += other.tableHits;
+        }
+
+        /** branchingFactor method
+         * - the effective branching factor: how many times more nodes the last depth took than the one before,
+         *   or the depth-th root of the nodes if there was only one depth
+         * */
+        public double branchingFactor (){
+            int n = iterations.size();
+            if (n >= 2 && iterations.get(n-2)[1] > 0)
+                return (double) iterations.get(n-1)[1] / iterations.get(n-2)[1];
+            if (n == 1 && depth > 0)
+                return Math.pow(Math.max(1, nodes), 1.0 / depth);
+            return 0;
+        }
+
+        /** toJson method
+         * @return the stats as one line of JSON
+         * */
+        public String toJson (){
+            StringBuilder ret = new StringBuilder();
+            ret.append(String.format(Locale.ROOT, "{\"depth\":%d,\"nodes\":%d,\"timeMs\":%d,\"nps\":%.0f,"
+                            + "\"leafEvaluations\":%d,\"betaCutoffs\":%d,\"firstMoveCutoffs\":%d,\"firstMoveCutoffRate\":%.3f,"
+                            + "\"probCuts\":%d,\"tableProbes\":%d,\"tableHits\":%d,\"tableHitRate\":%.3f,\"branchingFactor\":%.2f,"
+                            + "\"iterations\":[",
+                    depth, nodes, time / 1000000, nodes * 1e9 / Math.max(1, time), leafEvaluations, betaCutoffs,
+                    firstMoveCutoffs, (double) firstMoveCutoffs / Math.max(1, betaCutoffs), probCuts, tableProbes, tableHits,
+                    (double) tableHits / Math.max(1, tableProbes), branchingFactor()));
+            for (int i = 0; i < iterations.size(); i++){
+                long[] it = iterations.get(i);
+                ret.append(i > 0 ? "," : "").append(String.format(Locale.ROOT, "{\"depth\":%d,\"nodes\":%d,\"timeMs\":%.1f}",
+                        it[0], it[1], it[2] / 1e6));
+            }
+            return ret.append("]}").toString();
+        }
+
+        /** publish method
+         * - adds a finished search to the totals JMX shows
+         * */
+        public static void publish (SearchStats stats){
+            synchronized (TOTAL){
+                TOTAL.searches++;
+                TOTAL.add(stats);
+                TOTAL.time += stats.time;
+                TOTAL.depth = stats.depth;
+                TOTAL.branchingFactor = stats.branchingFactor();
+                TOTAL.lastTime = stats.time;
+            }
+        }
+
+        /** register method
+         * - puts the totals in the platform MBean server, once
+         * */
+        public static void register (){
+            try {
+                javax.management.MBeanServer server = java.lang.management.ManagementFactory.getPlatformMBeanServer();
+                javax.management.ObjectName name = new javax.management.ObjectName("ReversiAI:type=SearchStats");
+                if (!server.isRegistered(name))
+                    server.registerMBean(new javax.management.StandardMBean(TOTAL, SearchStatsMXBean.class, true), name);
+            }
+            catch (javax.management.JMException e){
+                System.out.println("Could not register the search stats with JMX: " + e.getMessage());
+            }
+        }
+
+        // the JMX attributes, read from another thread while the totals can be changing
+        public long getSearches (){ synchronized (this){ return searches; } }
+        public long getNodes (){ synchronized (this){ return nodes; } }
+        public long getLeafEvaluations (){ synchronized (this){ return leafEvaluations; } }
+        public long getBetaCutoffs (){ synchronized (this){ return betaCutoffs; } }
+        public long getFirstMoveCutoffs (){ synchronized (this){ return firstMoveCutoffs; } }
+        public long getProbCuts (){ synchronized (this){ return probCuts; } }
+        public long getTableProbes (){ synchronized (this){ return tableProbes; } }
+        public long getTableHits (){ synchronized (this){ return tableHits; } }
+        public long getTimeMillis (){ synchronized (this){ return time / 1000000; } }
+        public int getLastDepth (){ synchronized (this){ return depth; } }
+        public double getLastBranchingFactor (){ synchronized (this){ return branchingFactor; } }
+        public long getLastTimeMillis (){ synchronized (this){ return lastTime / 1000000; } }
+    }
+
+    // Symmetry Class
+    static class Symmetry {
+        static final int COUNT = 8;     // the ways to turn or mirror the board, 0 leaves it as it is
+
+        /** transform method
+         * - turns a bitboard one of the 8 ways: mirror the columns (bit 1 of t), then the rows (bit 2), then swap
+         *   the rows and the columns (bit 4), each with a few shifts and masks
+         * @param x the bitboard
+         * @param t the transformation
+         * @param size the length of a side of the board, 4 or 8
+         * @return the turned bitboard
+         * */
+        static long transform (long x, int t, int size){
+            if (size == 4)
+                return transform4x4(x, t);
+            if ((t & 1) != 0){
+                x = ((x >>> 1) & 0x5555555555555555L) | ((x & 0x5555555555555555L) << 1);
+                x = ((x >>> 2) & 0x3333333333333333L) | ((x & 0x3333333333333333L) << 2);
+                x = ((x >>> 4) & 0x0F0F0F0F0F0F0F0FL) | ((x & 0x0F0F0F0F0F0F0F0FL) << 4);
+            }
+            if ((t & 2) != 0)
+                x = Long.reverseBytes(x);
+            if ((t & 4) != 0){
+                long k = 0x0F0F0F0F00000000L & (x ^ (x << 28));
+                x ^= k ^ (k >>> 28);
+                k = 0x3333000033330000L & (x ^ (x << 14));
+                x ^= k ^ (k >>> 14);
+                k = 0x5500550055005500L & (x ^ (x << 7));
+                x ^= k ^ (k >>> 7);
+            }
+            return x;
+        }
+
+        /** transform4x4 method
+         * - helper method for transform, the same for the 16 bits of a 4x4 board
+         * */
+        private static long transform4x4 (long x, int t){
+            if ((t & 1) != 0){
+                x = ((x >>> 1) & 0x5555) | ((x & 0x5555) << 1);
+                x = ((x >>> 2) & 0x3333) | ((x & 0x3333) << 2);
+            }
+            if ((t & 2) != 0){
+                x = ((x >>> 4) & 0x0F0F) | ((x & 0x0F0F) << 4);
+                x = ((x >>> 8) & 0x00FF) | ((x & 0x00FF) << 8);
+            }
+            if ((t & 4) != 0){
+                long k = (x ^ (x >>> 3)) & 0x0A0A;
+                x ^= k ^ (k << 3);
+                k = (x ^ (x >>> 6)) & 0x00CC;
+                x ^= k ^ (k << 6);
+            }
+            return x;
+        }
+
+        /** square method
+         * @param square a square of the board
+         * @param t the transformation
+         * @param size the length of a side of the board
+         * @return the square that t turns the square into
+         * */
+        static int square (int square, int t, int size){
+            if (square < 0)
+                return square;
+            int row = square / size, column = square % size;
+            if ((t & 1) != 0)
+                column = size-1 - column;
+            if ((t & 2) != 0)
+                row = size-1 - row;
+            if ((t & 4) != 0){
+                int x = row;
+                row = column;
+                column = x;
+            }
+            return row*size + column;
+        }
+
+        /** inverse method
+         * - maps a move of the turned board back to the real board
+         * @param square a square of the turned board
+         * @param t the transformation
+         * @param size the length of a side of the board
+         * @return the square that t turns into square
+         * */
+        static int inverse (int square, int t, int size){
+            if (square < 0)
+                return square;
+            // swapping the rows and columns is done last, so it has to be taken back first
+            int row = square / size, column = square % size;
+            if ((t & 4) != 0){
+                int x = row;
+                row = column;
+                column = x;
+            }
+            if ((t & 2) != 0)
+                row = size-1 - row;
+            if ((t & 1) != 0)
+                column = size-1 - column;
+            return row*size + column;
+        }
+
+        /** canonical method
+         * - the canonical form of a position is the one of its 8 turns with the smallest black pieces, and then
+         *   the smallest white pieces, so a position and all of its turns have the same canonical form
+         * @param black the black pieces
+         * @param white the white pieces
+         * @param size the length of a side of the board
+         * @return the transformation that turns the position into its canonical form
+         * */
+        static int canonical (long black, long white, int size){
+            int best = 0;
+            long bestBlack = black, bestWhite = white;
+            for (int t = 1; t < COUNT; t++){
+                long b = transform(black, t, size);
+                int c = Long.compareUnsigned(b, bestBlack);
+                if (c > 0)
+                    continue;
+                long w = transform(white, t, size);
+                if (c < 0 || Long.compareUnsigned(w, bestWhite) < 0){
+                    best = t;
+                    bestBlack = b;
+                    bestWhite = w;
+                }
+            }
+            return best;
+        }
+    }
+
+    // PatternEval Class
+    static class PatternEval {
+        static final int PHASES = 6;    // the weight sets, one for every 10 pieces on the board
+        static final int FEATURES;      // the number of patterns on the board, every pattern in all of its places
+
+        // one place of each pattern on the 8x8 board ("a1" is 0), the other places are its rotations and mirrors
+        static final String[] NAMES = new String[]{"edge+2x", "corner3x3", "line2", "line3", "line4",
+                "diag8", "diag7", "diag6", "diag5", "diag4"};
+        static final int[][] PATTERNS = new int[][]{
+                {0, 1, 2, 3, 4, 5, 6, 7, 9, 14},        // the edge and the 2 X-squares next to it
+                {0, 1, 2, 8, 9, 10, 16, 17, 18},        // the 3x3 square in the corner
+                {8, 9, 10, 11, 12, 13, 14, 15},         // the second row
+                {16, 17, 18, 19, 20, 21, 22, 23},       // the third row
+                {24, 25, 26, 27, 28, 29, 30, 31},       // the fourth row
+                {0, 9, 18, 27, 36, 45, 54, 63},         // the long diagonal
+                {1, 10, 19, 28, 37, 46, 55},            // the diagonals next to it, getting shorter
+                {2, 11, 20, 29, 38, 47},
+                {3, 12, 21, 30, 39},
+                {3, 10, 17, 24},
+        };
+
+        static final int[][] FEATURE_SQUARES;   // the squares of each feature, in the order of its pattern
+        static final int[] FEATURE_PATTERN;     // the pattern each feature is a place of
+        static final int[][] SQUARE_FEATURES;   // the features each square is in
+        static final int[][] SQUARE_POWERS;     // the power of 3 of the square in each of those features
+        static {
+            ArrayList<int[]> squares = new ArrayList<>();
+            ArrayList<Integer> patterns = new ArrayList<>();
+            for (int p = 0; p < PATTERNS.length; p++){
+                HashSet<Long> seen = new HashSet<>();
+                for (int t = 0; t < Symmetry.COUNT; t++){
+                    int[] feature = new int[PATTERNS[p].length];
+                    long set = 0;
+                    for (int i = 0; i < feature.length; i++){
+                        feature[i] = Symmetry.square(PATTERNS[p][i], t, 8);
+                        set |= 1L << feature[i];
+                    }
+                    // a mirror that only puts the squares of a place in another order is the same place
+                    if (seen.add(set)){
+                        squares.add(feature);
+                        patterns.add(p);
+                    }
+                }
+            }
+            FEATURES = squares.size();
+            FEATURE_SQUARES = squares.toArray(new int[0][]);
+            FEATURE_PATTERN = new int[FEATURES];
+            for (int f = 0; f < FEATURES; f++)
+                FEATURE_PATTERN[f] = patterns.get(f);
+            SQUARE_FEATURES = new int[64][];
+            SQUARE_POWERS = new int[64][];
+            for (int sq = 0; sq < 64; sq++){
+                ArrayList<int[]> in = new ArrayList<>();
+                for (int f = 0; f < FEATURES; f++){
+                    for (int i = 0; i < FEATURE_SQUARES[f].length; i++){
+                        if (FEATURE_SQUARES[f][i] == sq)
+                            in.add(new int[]{f, pow3(i)});
+                    }
+                }
+                SQUARE_FEATURES[sq] = new int[in.size()];
+                SQUARE_POWERS[sq] = new int[in.size()];
+                for (int k = 0; k < in.size(); k++){
+                    SQUARE_FEATURES[sq][k] = in.get(k)[0];
+                    SQUARE_POWERS[sq][k] = in.get(k)[1];
+                }
+            }
+        }
+
+        // the default weights of a piece, a move along a line and a piece next to an empty square, by phase
+        static final double[] PIECE = new double[]{-2, -1, -0.5, 0, 1, 3};
+        static final double[] MOBILITY = new double[]{6, 6, 6, 5, 4, 2};
+        static final double[] FRONTIER = new double[]{3, 3, 3, 2, 1, 0};
+
+        static final int MAGIC = 0x52505754;    // "RPWT", the start of every weight file
+        static final int VERSION = 1;           // changes when the layout of the file or the patterns change
+
+        private static PatternEval standard;    // the weights the engine plays with, made the first time they're needed
+
+        short[][][] weights;    // [phase][pattern][index]: the score of every way a pattern can be filled in, for black
+
+        /** PatternEval constructor class
+         * - every pattern is a base-3 number: each of its squares is 0 if it's empty, 1 if it's black or 2 if
+         *   it's white, the first square being the lowest digit
+         * - BitBoard keeps the number of every place of every pattern up to date in makeMove and unmakeMove,
+         *   so evaluating a position is one array load for each of the FEATURES places
+         * - the weights are worked out from the values of the squares and the moves along the lines (see defaultWeight)
+         * */
+        public PatternEval (){
+            weights = new short[PHASES][PATTERNS.length][];
+            for (int phase = 0; phase < PHASES; phase++){
+                for (int p = 0; p < PATTERNS.length; p++){
+                    short[] w = new short[pow3(PATTERNS[p].length)];
+                    int[] cells = new int[PATTERNS[p].length];
+                    for (int index = 0; index < w.length; index++){
+                        for (int i = 0, x = index; i < cells.length; i++, x /= 3)
+                            cells[i] = x % 3;
+                        w[index] = (short) Math.round(defaultWeight(p, cells, phase));
+                    }
+                    weights[phase][p] = w;
+                }
+            }
+        }
+
+        /** PatternEval constructor class with weights
+         * @param weights the [phase][pattern][index] weights, from a weight file or the Tuner
+         * */
+        public PatternEval (short[][][] weights){
+            this.weights = weights;
+        }
+
+        /** standard method
+         * - the tuned weights of the --weights file if there is one, otherwise the default weights
+         * @return the weights the engine plays with
+         * */
+        public static synchronized PatternEval standard (){
+            if (standard == null){
+                Path path = Paths.get(options.getOrDefault("weights", WEIGHTS));
+                try {
+                    standard = Files.exists(path) ? load(path) : new PatternEval();
+                }
+                catch (IOException e){
+                    System.out.println("Could not load the weights, using the default ones: " + e.getMessage());
+                    standard = new PatternEval();
+                }
+            }
+            return standard;
+        }
+
+        /** load method
+         * - maps a weight file into memory and reads the weights out of it
+         * @param path the weight file
+         * @return the weights
+         * @throws IOException if the file can't be read or isn't a weight file of this version and these patterns
+         * */
+        public static PatternEval load (Path path) throws IOException {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)){
+                ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                int header = 16 + 4*PATTERNS.length;
+                if (buffer.capacity() < header || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION
+                        || buffer.getInt(8) != PHASES || buffer.getInt(12) != PATTERNS.length)
+                    throw new IOException("not a version " + VERSION + " weight file");
+                long size = header;
+                for (int p = 0; p < PATTERNS.length; p++){
+                    if (buffer.getInt(16 + 4*p) != PATTERNS[p].length)
+                        throw new IOException("the weight file has different patterns");
+                    size += 2L * PHASES * pow3(PATTERNS[p].length);
+                }
+                if (buffer.capacity() != size)
+                    throw new IOException("the weight file is the wrong size");
+                buffer.position(header);
+                ShortBuffer shorts = buffer.asShortBuffer();
+                short[][][] weights = new short[PHASES][PATTERNS.length][];
+                for (int phase = 0; phase < PHASES; phase++){
+                    for (int p = 0; p < PATTERNS.length; p++){
+                        weights[phase][p] = new short[pow3(PATTERNS[p].length)];
+                        shorts.get(weights[phase][p]);
+                    }
+                }
+                return new PatternEval(weights);
+            }
+        }
+
+        /** write method
+         * - writes the header (magic, version, phases, the number of patterns and their lengths) and then the
+         *   weights of every phase and pattern, in the order of the weights array
+         * @param path the weight file
+         * @throws IOException if the file can't be written
+         * */
+        public void write (Path path) throws IOException {
+            int size = 16 + 4*PATTERNS.length;
+            for (short[][] phase : weights){
+                for (short[] w : phase)
+                    size += 2*w.length;
+            }
+            ByteBuffer out = ByteBuffer.allocate(size);
+            out.putInt(MAGIC).putInt(VERSION).putInt(PHASES).putInt(PATTERNS.length);
+            for (int[] pattern : PATTERNS)
+                out.putInt(pattern.length);
+            for (short[][] phase : weights){
+                for (short[] w : phase){
+                    for (short x : w)
+                        out.putShort(x);
+                }
+            }
+            out.flip();
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)){
+                while (out.hasRemaining())
+                    channel.write(out);
+            }
+        }
+
+        /** eval method
+         * - the score of a position that has its features kept up to date (see BitBoard.enableFeatures)
+         * @param b the board
+         * @param color the color the score is for
+         * */
+        public int eval (BitBoard b, int color){
+            short[][] w = weights[phase(b)];
+            int[] f = b.features;
+            int score = 0;
+            for (int i = 0; i < FEATURES; i++)
+                score += w[FEATURE_PATTERN[i]][f[i]];
+            return color == 0 ? score : -score;
+        }
+
+        /** phase method
+         * @param b the board
+         * @return the weight set of the board, from the number of pieces on it
+         * */
+        public static int phase (BitBoard b){
+            return Math.min(PHASES-1, (Long.bitCount(b.black | b.white) - 4) / 10);
+        }
+
+        /** indices method
+         * - works out the number of every feature from scratch
+         * @param black the black pieces
+         * @param white the white pieces
+         * */
+        public static int[] indices (long black, long white){
+            int[] ret = new int[FEATURES];
+            for (int f = 0; f < FEATURES; f++){
+                int[] squares = FEATURE_SQUARES[f];
+                int index = 0;
+                for (int i = squares.length-1; i >= 0; i--){
+                    long bit = 1L << squares[i];
+                    index = index*3 + ((black & bit) != 0 ? 1 : (white & bit) != 0 ? 2 : 0);
+                }
+                ret[f] = index;
+            }
+            return ret;
+        }
+
+        /** update method
+         * - helper method for BitBoard.makeMove and unmakeMove
+         * - a piece put on an empty square adds 1 (black) or 2 (white) times the power of 3 of the square,
+         *   a flipped piece adds or takes away 1 times it
+         * @param features the features of the board
+         * @param square the square the piece is placed on
+         * @param color the color of the piece
+         * @param flipped the flipped pieces
+         * @param sign 1 to make the move, -1 to take it back
+         * */
+        static void update (int[] features, int square, int color, long flipped, int sign){
+            int[] fs = SQUARE_FEATURES[square];
+            int[] ps = SQUARE_POWERS[square];
+            int placed = sign * (color + 1);
+            for (int k = 0; k < fs.length; k++)
+                features[fs[k]] += placed * ps[k];
+            // white (2) turning black (1) is one less, black turning white one more
+            int turned = color == 0 ? -sign : sign;
+            for (long m = flipped; m != 0; m &= m - 1){
+                int sq = Long.numberOfTrailingZeros(m);
+                fs = SQUARE_FEATURES[sq];
+                ps = SQUARE_POWERS[sq];
+                for (int k = 0; k < fs.length; k++)
+                    features[fs[k]] += turned * ps[k];
+            }
+        }
+
+        /** defaultWeight method
+         * - helper method for the constructor
+         * - every square is counted once, by the first pattern that has it (split between the places of that
+         *   pattern that have it): corners are good, X-squares and C-squares next to an empty corner are bad,
+         *   pieces in a row from a corner along the edge can't be flipped any more, and having fewer pieces is
+         *   better at the start of the game but more is better at the end
+         * - the lines also count the moves along them and the pieces next to an empty square, so the
+         *   patterns see mobility without possibleMoves
+         * @param p the pattern
+         * @param cells the contents of its squares: 0 empty, 1 black, 2 white
+         * @param phase the weight set
+         * @return the score of the pattern for black
+         * */
+        private static double defaultWeight (int p, int[] cells, int phase){
+            int[] squares = PATTERNS[p];
+            double ret = 0;
+            for (int i = 0; i < squares.length; i++){
+                if (cells[i] == 0 || owner(squares[i]) != p)
+                    continue;
+                int sq = squares[i];
+                int row = sq / 8, column = sq % 8;
+                boolean edgeRow = row == 0 || row == 7, edgeColumn = column == 0 || column == 7;
+                double value = PIECE[phase];
+                if (edgeRow && edgeColumn)
+                    value += 40;
+                else if (isNextToCorner(row) && isNextToCorner(column))
+                    value += cornerCell(p, cells, sq) == 0 ? -25 : 0;
+                else if ((edgeRow && isNextToCorner(column)) || (edgeColumn && isNextToCorner(row)))
+                    value += cornerCell(p, cells, sq) == 0 ? -10 : 3;
+                else if (edgeRow || edgeColumn)
+                    value += 3;
+                // the edge pattern has its squares along the edge in order, so it can see the pieces that are safe
+                if (p == 0 && i < 8 && (safeFrom(cells, i, 0, 1) || safeFrom(cells, i, 7, -1)))
+                    value += 8;
+                ret += (cells[i] == 1 ? value : -value) / places(sq, p);
+            }
+            // every pattern but the 3x3 square is a line of the board, so the moves along it can be counted,
+            // and the pieces next to an empty square of the line, which give the opponent moves
+            if (p != 1){
+                int length = p == 0 ? 8 : squares.length;
+                ret += MOBILITY[phase] * (lineMoves(cells, length, 1) - lineMoves(cells, length, 2));
+                ret -= FRONTIER[phase] * (frontier(cells, length, 1) - frontier(cells, length, 2));
+            }
+            return ret;
+        }
+
+        /** lineMoves method
+         * - helper method for defaultWeight
+         * @return the empty squares of the line where color can flip pieces of the line
+         * */
+        private static int lineMoves (int[] cells, int length, int color){
+            int ret = 0;
+            for (int i = 0; i < length; i++){
+                if (cells[i] == 0 && (flipsLine(cells, length, color, i, 1) || flipsLine(cells, length, color, i, -1)))
+                    ret++;
+            }
+            return ret;
+        }
+
+        /** flipsLine method
+         * - helper method for lineMoves
+         * */
+        private static boolean flipsLine (int[] cells, int length, int color, int i, int step){
+            int j = i + step;
+            while (j >= 0 && j < length && cells[j] == 3 - color)
+                j += step;
+            return j != i + step && j >= 0 && j < length && cells[j] == color;
+        }
+
+        /** frontier method
+         * - helper method for defaultWeight
+         * @return the pieces of color next to an empty square of the line
+         * */
+        private static int frontier (int[] cells, int length, int color){
+            int ret = 0;
+            for (int i = 0; i < length; i++){
+                if (cells[i] == color && ((i > 0 && cells[i-1] == 0) || (i < length-1 && cells[i+1] == 0)))
+                    ret++;
+            }
+            return ret;
+        }
+
+        /** isNextToCorner method
+         * - helper method for defaultWeight
+         * */
+        private static boolean isNextToCorner (int rowOrColumn){
+            return rowOrColumn == 1 || rowOrColumn == 6;
+        }
+
+        /** cornerCell method
+         * - helper method for defaultWeight
+         * @return the contents of the corner next to sq, which is in pattern p
+         * */
+        private static int cornerCell (int p, int[] cells, int sq){
+            int corner = (sq / 8 < 4 ? 0 : 56) + (sq % 8 < 4 ? 0 : 7);
+            for (int i = 0; i < PATTERNS[p].length; i++){
+                if (PATTERNS[p][i] == corner)
+                    return cells[i];
+            }
+            return 0;
+        }
+
+        /** safeFrom method
+         * - helper method for defaultWeight
+         * @return true if the squares from the corner at start to i along the edge are all the color of i
+         * */
+        private static boolean safeFrom (int[] cells, int i, int start, int step){
+            for (int j = start; j != i; j += step){
+                if (cells[j] != cells[i])
+                    return false;
+            }
+            return i != start;
+        }
+
+        /** owner method
+         * - helper method for defaultWeight
+         * @return the first pattern that has the square in one of its places
+         * */
+        private static int owner (int sq){
+            return FEATURE_PATTERN[SQUARE_FEATURES[sq][0]];
+        }
+
+        /** places method
+         * - helper method for defaultWeight
+         * @return the number of places of pattern p that have the square
+         * */
+        private static int places (int sq, int p){
+            int ret = 0;
+            for (int f : SQUARE_FEATURES[sq]){
+                if (FEATURE_PATTERN[f] == p)
+                    ret++;
+            }
+            return ret;
+        }
+
+        /** pow3 method
+         * @return 3 to the power of n
+         * */
+        static int pow3 (int n){
+            int ret = 1;
+            for (int i = 0; i < n; i++)
+                ret *= 3;
+            return ret;
+        }
+
+        /** swapColors method
+         * @param index the index of a pattern
+         * @param length the number of squares of the pattern
+         * @return the index of the same pattern with black and white swapped
+         * */
+        static int swapColors (int index, int length){
+            int ret = 0;
+            for (int i = 0, power = 1; i < length; i++, power *= 3, index /= 3){
+                int cell = index % 3;
+                ret += (cell == 0 ? 0 : 3 - cell) * power;
+            }
+            return ret;
+        }
+    }
+
+    // PositionFile Class
+    static class PositionFile implements Closeable {
+        static final int MAGIC = 0x52504F53;    // "RPOS", the start of every position file
+        static final int VERSION = 1;           // changes when the layout of the file changes
+        static final int HEADER = 16;           // the magic and version ints and the long count
+        static final int RECORD = 18;           // the black and white longs and the short score of a position
+
+        FileChannel channel;
+        long count;                 // the number of positions in the file
+        MappedByteBuffer[] regions; // the positions, for a file that is read
+        ByteBuffer out;             // the positions that haven't been written yet, for a file that is added to
+
+        /** PositionFile constructor class
+         * - a file of 8x8 positions and their scores, too many to keep on the heap: they are added to the end
+         *   of the file through a small buffer, and read back memory-mapped
+         * @param channel the open file
+         * @param write true to add positions to the file, false to read it
+         * @throws IOException if the file can't be read or isn't a position file of this version
+         * */
+        private PositionFile (FileChannel channel, boolean write) throws IOException {
+            this.channel = channel;
+            if (channel.size() == 0){
+                ByteBuffer header = ByteBuffer.allocate(HEADER).putInt(MAGIC).putInt(VERSION).putLong(0);
+                header.flip();
+                channel.write(header, 0);
+            }
+            ByteBuffer header = ByteBuffer.allocate(HEADER);
+            channel.read(header, 0);
+            if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION)
+                throw new IOException("not a version " + VERSION + " position file");
+            count = header.getLong(8);
+            if (channel.size() != HEADER + count * RECORD)
+                throw new IOException("the position file is the wrong size");
+            if (write)
+                out = ByteBuffer.allocate(RECORD * 4096);
+            else
+                regions = map(channel, HEADER, count, RECORD, FileChannel.MapMode.READ_ONLY);
+        }
+
+        /** open method
+         * @param path the position file
+         * @return the file, memory-mapped for reading
+         * @throws IOException if the file can't be read
+         * */
+        public static PositionFile open (Path path) throws IOException {
+            return new PositionFile(FileChannel.open(path, StandardOpenOption.READ), false);
+        }
+
+        /** append method
+         * @param path the position file, made if it isn't there
+         * @return the file, for adding positions to the end of it
+         * @throws IOException if the file can't be read or written
+         * */
+        public static PositionFile append (Path path) throws IOException {
+            return new PositionFile(FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE), true);
+        }
+
+        /** map method
+         * - maps fixed-size records of a file into memory, in as many regions as it takes (a MappedByteBuffer
+         *   can't be bigger than 2 GB), with no record split between two regions
+         * @param channel the file
+         * @param start where the records start
+         * @param records the number of records
+         * @param size the bytes of a record
+         * @param mode READ_ONLY or READ_WRITE
+         * */
+        static MappedByteBuffer[] map (FileChannel channel, long start, long records, int size,
+                                       FileChannel.MapMode mode) throws IOException {
+            long perRegion = Integer.MAX_VALUE / size;
+            MappedByteBuffer[] ret = new MappedByteBuffer[(int) ((records + perRegion - 1) / perRegion)];
+            for (int r = 0; r < ret.length; r++){
+                long n = Math.min(perRegion, records - r*perRegion);
+                ret[r] = channel.map(mode, start + r*perRegion*size, n*size);
+            }
+            return ret;
+        }
+
+        /** add method
+         * - adds a position to the end of the file, can be called by several threads
+         * @param black the black pieces
+         * @param white the white pieces
+         * @param score the score of the position for black
+         * */
+        public synchronized void add (long black, long white, int score) throws IOException {
+            if (!out.hasRemaining())
+                flush();
+            out.putLong(black).putLong(white).putShort((short) score);
+        }
+
+        /** flush method
+         * - helper method for add and close
+         * - writes the buffered positions and the new count
+         * */
+        private void flush () throws IOException {
+            out.flip();
+            long position = HEADER + count * RECORD;
+            count += out.remaining() / RECORD;
+            while (out.hasRemaining())
+                position += channel.write(out, position);
+            out.clear();
+            channel.write(ByteBuffer.allocate(8).putLong(0, count), 8);
+        }
+
+        /** colorToMove method
+         * - the file doesn't keep the color to move, without passes it's black when the number of pieces is even
+         * @param b the board
+         * @return that color, or the other one if it has no moves and the other one does
+         * */
+        static int colorToMove (BitBoard b){
+            int color = Long.bitCount(b.black | b.white) % 2;
+            return b.possibleMoves(color) == 0 && b.possibleMoves((color+1)%2) != 0 ? (color+1)%2 : color;
+        }
+
+        /** get method
+         * - reads a position, can be called by several threads
+         * @param i the number of the position
+         * @return the black pieces, white pieces and score for black
+         * */
+        public long[] get (long i){
+            long perRegion = Integer.MAX_VALUE / RECORD;
+            ByteBuffer region = regions[(int) (i / perRegion)];
+            int at = (int) (i % perRegion) * RECORD;
+            return new long[]{region.getLong(at), region.getLong(at + 8), region.getShort(at + 16)};
+        }
+
+        public synchronized void close () throws IOException {
+            if (out != null)
+                flush();
+            channel.close();
+        }
+    }
+
+    // GameRecord Class
+    static class GameRecord implements Closeable {
+        static final int MAGIC = 0x5247414D;    // "RGAM", the start of every game file
+        static final int VERSION = 1;           // changes when the layout of the file changes
+        static final int HEADER = 16;           // the magic and version ints and 8 unused bytes
+        static final int GAME_HEADER = 12;      // the short number of moves, byte result, byte flags and long time
+        static final int PASS = 0xFF;           // the byte of a pass, the other moves are their square
+        static final int WINDOW = 1 << 30;      // the most of the file mapped at once when it's replayed
+
+        // the flags of a game
+        static final int COMPLETE = 1;          // the game was played to the end, not stopped
+        static final int WHITE_FIRST = 2;       // white made the first move
+        static final int BLACK_ENGINE = 4;      // the engine played black
+        static final int WHITE_ENGINE = 8;      // the engine played white
+        static final int FROM_POSITION = 16;    // the game didn't start from the start, the header is followed by
+                                                // the black and white longs of the position it started from
+
+        private static GameRecord journal;      // the file given with --record, opened the first time it's needed
+
+        FileChannel channel;
+
+        // what a replay found
+        long games, moves, passes;
+        long invalid;       // games with a move that isn't legal, or a result that isn't the one on the board
+        long blackWins, draws, whiteWins;   // of the complete games
+        ArrayList<String> errors = new ArrayList<>();   // the first invalid games
+
+        /** GameRecord constructor class
+         * - a file of 8x8 games that is only added to, every game is a small header and a byte for every move
+         *   (its square, or PASS), so a game is about 70 bytes
+         * @param channel the open file
+         * @throws IOException if it isn't a game file of this version
+         * */
+        private GameRecord (FileChannel channel) throws IOException {
+            this.channel = channel;
+            if (channel.size() == 0){
+                ByteBuffer header = ByteBuffer.allocate(HEADER).putInt(MAGIC).putInt(VERSION).putLong(0);
+                header.flip();
+                channel.write(header, 0);
+            }
+            ByteBuffer header = ByteBuffer.allocate(HEADER);
+            channel.read(header, 0);
+            if (channel.size() < HEADER || header.getInt(0) != MAGIC || header.getInt(4) != VERSION)
+                throw new IOException("not a version " + VERSION + " game file");
+        }
+
+        /** open method
+         * @param path the game file
+         * @return the file, for replaying
+         * @throws IOException if the file can't be read
+         * */
+        public static GameRecord open (Path path) throws IOException {
+            return new GameRecord(FileChannel.open(path, StandardOpenOption.READ));
+        }
+
+        /** append method
+         * @param path the game file, made if it isn't there
+         * @return the file, for adding games to the end of it
+         * @throws IOException if the file can't be read or written
+         * */
+        public static GameRecord append (Path path) throws IOException {
+            return new GameRecord(FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE));
+        }
+
+        /** square method
+         * @param location a location such as "d3"
+         * @return the byte of the move on an 8x8 board, or -1 if it isn't a location
+         * */
+        static int square (String location){
+            if (location == null || location.length() != 2)
+                return -1;
+            int column = location.charAt(0) - 'a', row = location.charAt(1) - '1';
+            return column < 0 || column >= 8 || row < 0 || row >= 8 ? -1 : row*8 + column;
+        }
+
+        /** add method
+         * - adds a game to the end of the file in one write, and makes sure it's on the disk, can be called by
+         *   several threads
+         * @param start the position the game started from, only written with FROM_POSITION
+         * @param moves the moves, squares or PASS
+         * @param plies the number of moves
+         * @param result the pieces of black minus the pieces of white at the end
+         * @param flags COMPLETE, WHITE_FIRST, BLACK_ENGINE, WHITE_ENGINE and FROM_POSITION
+         * */
+        public synchronized void add (BitBoard start, byte[] moves, int plies, int result, int flags) throws IOException {
+            ByteBuffer game = ByteBuffer.allocate(GAME_HEADER + ((flags & FROM_POSITION) != 0 ? 16 : 0) + plies);
+            game.putShort((short) plies).put((byte) result).put((byte) flags).putLong(System.currentTimeMillis());
+            if ((flags & FROM_POSITION) != 0)
+                game.putLong(start.black).putLong(start.white);
+            game.put(moves, 0, plies).flip();
+            long position = channel.size();
+            while (game.hasRemaining())
+                position += channel.write(game, position);
+            channel.force(false);
+        }
+
+        /** record method
+         * - adds a game to the file given with --record (reversi.games), unless it's "none", can be called by
+         *   several threads
+         * @param start the position the game started from
+         * @param first the color that moved first
+         * @param moves the moves, squares or PASS
+         * @param plies the number of moves
+         * @param end the position at the end
+         * @param flags BLACK_ENGINE and WHITE_ENGINE, the others are worked out
+         * */
+        static void record (BitBoard start, int first, byte[] moves, int plies, BitBoard end, int flags){
+            String file = options.getOrDefault("record", GAMES);
+            if (file.equals("none") || plies == 0)
+                return;
+            BitBoard standard = new BitBoard(true);
+            if (start.black != standard.black || start.white != standard.white)
+                flags |= FROM_POSITION;
+            if (end.possibleMoves(0) == 0 && end.possibleMoves(1) == 0)
+                flags |= COMPLETE;
+            if (first == 1)
+                flags |= WHITE_FIRST;
+            try {
+                synchronized (GameRecord.class){
+                    if (journal == null)
+                        journal = append(Paths.get(file.isEmpty() ? GAMES : file));
+                }
+                journal.add(start, moves, plies, end.numSquares(0) - end.numSquares(1), flags);
+            }
+            catch (IOException e){
+                System.out.println("Could not record the game: " + e.getMessage());
+            }
+        }
+
+        /** Visitor interface
+         * - is shown every move of a replay, before it's made, and then whether the game was accepted
+         * */
+        interface Visitor {
+            /**
+             * @param b the board, which must not be changed
+             * @param color the color to move
+             * @param move the square of the move, or -1 for a pass
+             * @param result the pieces of black minus the pieces of white at the end of the game
+             */
+            void visit (BitBoard b, int color, int move, int result) throws IOException;
+
+            /**
+             * - called after the last move of every game, the moves before it were only valid if the game is
+             * @param accepted true if the game is complete and valid
+             */
+            default void end (boolean accepted) throws IOException {}
+        }
+
+        /** replay method
+         * - plays every game of the file on a BitBoard, reading the file through a memory-mapped window
+         * - every move has to be legal, a pass only when the color to move has no moves and the other color does,
+         *   and a complete game has to end with no moves for either color and the recorded result
+         * - a game cut off at the end of the file (by a crash while it was written) is left out
+         * @param visitor is shown every move of the valid part of each game, can be null
+         * */
+        public void replay (Visitor visitor) throws IOException {
+            long size = channel.size();
+            long offset = HEADER, start = 0;
+            MappedByteBuffer window = null;
+            while (offset + GAME_HEADER <= size){
+                // a new window starts at the game that doesn't fit in the old one
+                if (window == null || offset + GAME_HEADER > start + window.capacity()
+                        || offset + length(window, (int) (offset - start)) > start + window.capacity()){
+                    start = offset;
+                    window = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(WINDOW, size - start));
+                    if (offset + length(window, 0) > size){
+                        errors.add("game " + games + " is cut off at the end of the file");
+                        break;
+                    }
+                }
+                int at = (int) (offset - start);
+                replayGame(window, at, visitor);
+                offset += length(window, at);
+            }
+        }
+
+        /** length method
+         * - helper method for replay
+         * @param at where a game starts in the window
+         * @return the bytes of the game
+         * */
+        private static int length (ByteBuffer window, int at){
+            return GAME_HEADER + ((window.get(at + 3) & FROM_POSITION) != 0 ? 16 : 0) + (window.getShort(at) & 0xFFFF);
+        }
+
+        /** replayGame method
+         * - helper method for replay
+         * @param window the mapped part of the file
+         * @param at where the game starts in the window
+         * */
+        private void replayGame (ByteBuffer window, int at, Visitor visitor) throws IOException {
+            int plies = window.getShort(at) & 0xFFFF, result = window.get(at + 2), flags = window.get(at + 3);
+            at += GAME_HEADER;
+            BitBoard b = new BitBoard(true);
+            if ((flags & FROM_POSITION) != 0){
+                b.black = window.getLong(at);
+                b.white = window.getLong(at + 8);
+                b.hash = b.computeHash();
+                at += 16;
+            }
+            int color = (flags & WHITE_FIRST) != 0 ? 1 : 0;
+            String error = null;
+            for (int i = 0; i < plies && error == null; i++){
+                int move = window.get(at + i) & 0xFF, other = (color+1)%2;
+                long legal = b.possibleMoves(color);
+                if (move == PASS){
+                    if (legal != 0 || b.possibleMoves(other) == 0)
+                        error = "a pass at move " + (i+1) + " when it isn't allowed";
+                    else {
+                        if (visitor != null)
+                            visitor.visit(b, color, -1, result);
+                        passes++;
+                    }
+                }
+                else if (move >= 64 || (legal >>> move & 1) == 0)
+                    error = "an illegal move at move " + (i+1);
+                else {
+                    if (visitor != null)
+                        visitor.visit(b, color, move, result);
+                    b.makeMove(move, color);
+                }
+                if (error == null)
+                    moves++;
+                color = other;
+            }
+            if (error == null && (flags & COMPLETE) != 0){
+                if (b.possibleMoves(0) != 0 || b.possibleMoves(1) != 0)
+                    error = "moves left at the end of a complete game";
+                else if (b.numSquares(0) - b.numSquares(1) != result)
+                    error = "a result of " + result + " instead of " + (b.numSquares(0) - b.numSquares(1));
+                else if (result > 0)
+                    blackWins++;
+                else if (result < 0)
+                    whiteWins++;
+                else
+                    draws++;
+            }
+            if (error != null){
+                invalid++;
+                if (errors.size() < 10)
+                    errors.add("game " + games + ": " + error);
+            }
+            if (visitor != null)
+                visitor.end(error == null && (flags & COMPLETE) != 0);
+            games++;
+        }
+
+        public void close () throws IOException {
+            channel.close();
+        }
+
+        /** replayTool method
+         * - replays a game file, prints what it found and how fast, and writes every position before a move to a
+         *   position file with the result of its game as its score, if one is given (for --tune)
+         * - only the positions of complete, valid games are written: a stopped game has no result, so the positions
+         *   of each game are held back until it's accepted
+         * @param path the game file
+         * @param positions the position file, or null
+         * */
+        public static void replayTool (Path path, Path positions) throws IOException {
+            try (GameRecord record = open(path); PositionFile out = positions == null ? null : PositionFile.append(positions)){
+                long start = System.nanoTime();
+                long[] extracted = new long[1];
+                record.replay(out == null ? null : new Visitor(){
+                    ArrayList<long[]> game = new ArrayList<>();    // the positions of the game being replayed
+
+                    public void visit (BitBoard b, int color, int move, int result){
+                        if (move >= 0)
+                            game.add(new long[]{b.black, b.white, result});
+                    }
+
+                    public void end (boolean accepted) throws IOException {
+                        if (accepted){
+                            for (long[] p : game)
+                                out.add(p[0], p[1], (int) p[2]);
+                            extracted[0] += game.size();
+                        }
+                        game.clear();
+                    }
+                });
+                double seconds = (System.nanoTime() - start) / 1e9;
+                System.out.printf("%d games, %d moves (%d passes) in %.3f s: %.1f million moves/s%n", record.games,
+                        record.moves, record.passes, seconds, record.moves / seconds / 1e6);
+                System.out.println("black wins " + record.blackWins + ", draws " + record.draws + ", white wins "
+                        + record.whiteWins + ", invalid " + record.invalid);
+                record.errors.forEach(System.out::println);
+                if (out != null)
+                    System.out.println(extracted[0] + " positions added to " + positions);
+            }
+        }
+    }
+
+    // Tuner Class
+    static class Tuner {
+        static final int SCALE = 32;        // the tuned weights are in 1/32 of a piece
+        static final int CACHE_RECORD = 2*PatternEval.FEATURES + 4;    // the pattern indices, phase and score
+        static final int NO_SCORE = Integer.MIN_VALUE;  // a position the search couldn't score in pieces
+
+        int[][] offset;     // where the weights of each phase and pattern start in the vector of all weights
+        int size;           // the number of weights
+        int[][] swapped;    // the index of each pattern with the colors swapped, by pattern
+        MappedByteBuffer[] cache;   // the patterns of every position, so they are only worked out once
+        long count;         // the number of positions
+        long perRegion;     // the positions in each region of the cache
+        int chunks;         // the parts the positions are split into for the parallel streams
+
+        /** generate method
+         * - plays self-play games and adds their positions to a position file
+         * - the first moves are random so the games are different, then the moves are found by a shallow search,
+         *   and with exactEmpties empty squares or less the moves are perfect (EndgameSolver)
+         * - the positions with exactEmpties empty squares or less are scored with their exact result, the earlier
+         *   ones with the score of the shallow search in pieces; with --eval simple that score isn't in pieces, so
+         *   they get the result of their game instead
+         * @param path the position file, the positions are added to the end of it
+         * @param games the number of games
+         * @param depth the depth of the search
+         * @param exactEmpties the empty squares the games are played perfectly from
+         * @param randomPlies the number of random moves at the start of each game
+         * @param seed the seed of the random moves
+         * */
+        public static void generate (Path path, int games, int depth, int exactEmpties, int randomPlies, long seed)
+                throws IOException {
+            long start = System.nanoTime();
+            AtomicLong positions = new AtomicLong();
+            ThreadLocal<algorithm8x8> searches = ThreadLocal.withInitial(() -> {
+                algorithm8x8 a = new algorithm8x8(new Node(new Board(0, 0, true)), depth, new TranspositionTable(4));
+                a.rootMoves = -1L;
+                return a;
+            });
+            ThreadLocal<EndgameSolver> solvers = ThreadLocal.withInitial(() -> new EndgameSolver(16));
+            try (PositionFile out = PositionFile.append(path)){
+                long before = out.count;
+                IntStream.range(0, games).parallel().forEach(g -> {
+                    try {
+                        positions.addAndGet(playGame(new Random(seed + g), searches.get(), solvers.get(), depth,
+                                exactEmpties, randomPlies, out));
+                    }
+                    catch (IOException e){
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                System.out.printf("%d games, %d positions in %d s, %s has %d positions%n", games, positions.get(),
+                        (System.nanoTime() - start) / 1000000000, path, before + positions.get());
+            }
+        }
+
+        /** playGame method
+         * - helper method for generate
+         * @return the number of positions added
+         * */
+        private static int playGame (Random random, algorithm8x8 search, EndgameSolver solver, int depth,
+                                     int exactEmpties, int randomPlies, PositionFile out) throws IOException {
+            BitBoard b = new BitBoard(true);
+            b.enableFeatures();
+            ArrayList<long[]> positions = new ArrayList<>();
+            int color = 0;
+            for (int ply = 0; ; ply++){
+                int other = (color+1)%2;
+                long moves = b.possibleMoves(color);
+                if (moves == 0){
+                    if (b.possibleMoves(other) == 0)
+                        break;
+                    color = other;
+                    continue;
+                }
+                int move;
+                int score;
+                if (Long.bitCount(b.empty()) <= exactEmpties){
+                    score = solver.solve(b, color, true, null);
+                    move = solver.bestMove;
+                }
+                else {
+                    score = pieces(search, search.searchPosition(b, depth, -algorithm8x8.INFINITY,
+                            algorithm8x8.INFINITY, color));
+                    move = search.pv[0][0];
+                }
+                if (ply < randomPlies){
+                    int[] list = new int[64];
+                    move = list[random.nextInt(BitBoard.moveList(moves, list))];
+                }
+                positions.add(new long[]{b.black, b.white, score == NO_SCORE || color == 0 ? score : -score});
+                b.makeMove(move, color);
+                color = other;
+            }
+            // the empty squares go to the winner, the same as the solver counts them
+            int result = b.numSquares(0) - b.numSquares(1);
+            result += Integer.signum(result) * Long.bitCount(b.empty());
+            for (long[] p : positions)
+                out.add(p[0], p[1], p[2] == NO_SCORE ? result : (int) p[2]);
+            return positions.size();
+        }
+
+        /** pieces method
+         * - helper method for playGame
+         * @param search the search the score is from
+         * @param score the score of the search
+         * @return the score in pieces, or NO_SCORE if the evaluation isn't in pieces (--eval simple)
+         * */
+        private static int pieces (algorithm8x8 search, int score){
+            if (score >= algorithm8x8.WIN/2)
+                return score - algorithm8x8.WIN;
+            if (score <= -algorithm8x8.WIN/2)
+                return score + algorithm8x8.WIN;
+            if (search.patterns == null)
+                return NO_SCORE;
+            return Math.max(-64, Math.min(64, Math.round((float) score / SCALE)));
+        }
+
+        /** Tuner constructor class
+         * - works out the patterns of every position of the file once, into a memory-mapped cache file that is
+         *   deleted when the tuner is done
+         * @param positions the position file
+         * @param channel the cache file, empty
+         * */
+        private Tuner (PositionFile positions, FileChannel channel) throws IOException {
+            offset = new int[PatternEval.PHASES][PatternEval.PATTERNS.length];
+            for (int phase = 0; phase < PatternEval.PHASES; phase++){
+                for (int p = 0; p < PatternEval.PATTERNS.length; p++){
+                    offset[phase][p] = size;
+                    size += PatternEval.pow3(PatternEval.PATTERNS[p].length);
+                }
+            }
+            swapped = new int[PatternEval.PATTERNS.length][];
+            for (int p = 0; p < swapped.length; p++){
+                int length = PatternEval.PATTERNS[p].length;
+                swapped[p] = new int[PatternEval.pow3(length)];
+                for (int index = 0; index < swapped[p].length; index++)
+                    swapped[p][index] = PatternEval.swapColors(index, length);
+            }
+            count = positions.count;
+            perRegion = Integer.MAX_VALUE / CACHE_RECORD;
+            chunks = Runtime.getRuntime().availableProcessors();
+            cache = PositionFile.map(channel, 0, count, CACHE_RECORD, FileChannel.MapMode.READ_WRITE);
+            forEachChunk(() -> new double[0], (ignored, i) -> {
+                long[] p = positions.get(i);
+                int[] features = PatternEval.indices(p[0], p[1]);
+                ByteBuffer region = cache[(int) (i / perRegion)];
+                int at = (int) (i % perRegion) * CACHE_RECORD;
+                for (int f = 0; f < features.length; f++)
+                    region.putChar(at + 2*f, (char) features[f]);
+                BitBoard b = new BitBoard(true);
+                b.black = p[0];
+                b.white = p[1];
+                region.putShort(at + 2*features.length, (short) PatternEval.phase(b));
+                region.putShort(at + 2*features.length + 2, (short) p[2]);
+            });
+        }
+
+        /** fit method
+         * - finds the weights that make the evaluation closest to the scores (times SCALE) by least squares,
+         *   with every position counted a second time with the colors swapped
+         * - the weights are found with conjugate gradients on (A^T A + ridge I) w = A^T y, where each row of A has
+         *   a 1 for the weight of each pattern of a position: every step is one pass over the positions, split
+         *   into chunks that are added up by a parallel stream
+         * - every 10th position isn't used for the fit, it is used to check the error on positions it hasn't seen
+         * @param path the position file
+         * @param iterations the number of conjugate gradient steps
+         * @param ridge how much the weights are pulled to 0, for the patterns that are only in a few positions
+         * @return the weights
+         * */
+        public static PatternEval fit (Path path, int iterations, double ridge) throws IOException {
+            Path cachePath = Files.createTempFile("reversi", ".features");
+            try (PositionFile positions = PositionFile.open(path);
+                 FileChannel channel = FileChannel.open(cachePath, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                         StandardOpenOption.DELETE_ON_CLOSE)){
+                long start = System.nanoTime();
+                Tuner tuner = new Tuner(positions, channel);
+                System.out.printf("%d positions, %d weights, patterns worked out in %d ms%n", tuner.count, tuner.size,
+                        (System.nanoTime() - start) / 1000000);
+                double[] w = tuner.solve(iterations, ridge);
+                short[][][] weights = new short[PatternEval.PHASES][PatternEval.PATTERNS.length][];
+                for (int phase = 0; phase < PatternEval.PHASES; phase++){
+                    for (int p = 0; p < PatternEval.PATTERNS.length; p++){
+                        short[] x = new short[PatternEval.pow3(PatternEval.PATTERNS[p].length)];
+                        for (int i = 0; i < x.length; i++)
+                            x[i] = (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE,
+                                    Math.round(w[tuner.offset[phase][p] + i])));
+                        weights[phase][p] = x;
+                    }
+                }
+                return new PatternEval(weights);
+            }
+        }
+
+        /** solve method
+         * - helper method for fit, the conjugate gradient steps
+         * */
+        private double[] solve (int iterations, double ridge){
+            long start = System.nanoTime();
+            double[] w = new double[size];
+            double[] r = multiply(null);
+            double[] p = r.clone();
+            double rr = dot(r, r);
+            for (int k = 1; k <= iterations && rr > 0; k++){
+                double[] q = multiply(p);
+                for (int i = 0; i < size; i++)
+                    q[i] += ridge * p[i];
+                double alpha = rr / dot(p, q);
+                for (int i = 0; i < size; i++){
+                    w[i] += alpha * p[i];
+                    r[i] -= alpha * q[i];
+                }
+                double next = dot(r, r);
+                for (int i = 0; i < size; i++)
+                    p[i] = r[i] + next / rr * p[i];
+                rr = next;
+                if (k % 10 == 0 || k == iterations){
+                    double[] error = error(w);
+                    System.out.printf("step %d: error %.2f pieces, %.2f on the positions left out (%d s)%n", k,
+                            error[0], error[1], (System.nanoTime() - start) / 1000000000);
+                }
+            }
+            return w;
+        }
+
+        /** multiply method
+         * - helper method for solve
+         * @param p the vector to multiply, or null for A^T y
+         * @return A^T A p, or A^T y
+         * */
+        private double[] multiply (double[] p){
+            return forEachChunk(() -> new double[size], (sum, i) -> {
+                if (i % 10 == 0)
+                    return;
+                int[] rows = rows(i);
+                for (int side = 0; side < 2; side++){
+                    double x = 0;
+                    if (p == null)
+                        x = side == 0 ? score(i) : -score(i);
+                    else {
+                        for (int f = side*PatternEval.FEATURES; f < (side+1)*PatternEval.FEATURES; f++)
+                            x += p[rows[f]];
+                    }
+                    for (int f = side*PatternEval.FEATURES; f < (side+1)*PatternEval.FEATURES; f++)
+                        sum[rows[f]] += x;
+                }
+            });
+        }
+
+        /** error method
+         * - helper method for solve
+         * @return the root mean square error in pieces of the positions used for the fit and the ones left out
+         * */
+        private double[] error (double[] w){
+            double[] sums = forEachChunk(() -> new double[4], (sum, i) -> {
+                int[] rows = rows(i);
+                double x = 0;
+                for (int f = 0; f < PatternEval.FEATURES; f++)
+                    x += w[rows[f]];
+                double e = x - score(i);
+                int set = i % 10 == 0 ? 2 : 0;
+                sum[set] += e*e;
+                sum[set+1]++;
+            });
+            return new double[]{Math.sqrt(sums[0] / sums[1]) / SCALE, Math.sqrt(sums[2] / Math.max(1, sums[3])) / SCALE};
+        }
+
+        /** rows method
+         * - helper method for the passes
+         * @return the weights of the patterns of position i, and then of the same position with the colors swapped
+         * */
+        private int[] rows (long i){
+            ByteBuffer region = cache[(int) (i / perRegion)];
+            int at = (int) (i % perRegion) * CACHE_RECORD;
+            int phase = region.getShort(at + 2*PatternEval.FEATURES);
+            int[] ret = new int[2*PatternEval.FEATURES];
+            for (int f = 0; f < PatternEval.FEATURES; f++){
+                int p = PatternEval.FEATURE_PATTERN[f];
+                int index = region.getChar(at + 2*f);
+                ret[f] = offset[phase][p] + index;
+                ret[PatternEval.FEATURES + f] = offset[phase][p] + swapped[p][index];
+            }
+            return ret;
+        }
+
+        /** score method
+         * - helper method for the passes
+         * @return the score of position i for black, times SCALE
+         * */
+        private double score (long i){
+            ByteBuffer region = cache[(int) (i / perRegion)];
+            return SCALE * region.getShort((int) (i % perRegion) * CACHE_RECORD + 2*PatternEval.FEATURES + 2);
+        }
+
+        /** forEachChunk method
+         * - helper method for the passes
+         * - splits the positions into chunks, goes over each one with its own sum on a parallel stream, and adds
+         *   up the sums of the chunks
+         * @param newSum makes the sum of a chunk
+         * @param add adds position i to a sum
+         * @return the sum of every chunk
+         * */
+        private double[] forEachChunk (Supplier<double[]> newSum, ObjLongConsumer<double[]> add){
+            return IntStream.range(0, chunks).parallel().mapToObj(c -> {
+                double[] sum = newSum.get();
+                for (long i = count * c / chunks; i < count * (c+1) / chunks; i++)
+                    add.accept(sum, i);
+                return sum;
+            }).reduce((a, b) -> {
+                for (int i = 0; i < a.length; i++)
+                    a[i] += b[i];
+                return a;
+            }).get();
+        }
+
+        private static double dot (double[] a, double[] b){
+            double ret = 0;
+            for (int i = 0; i < a.length; i++)
+                ret += a[i] * b[i];
+            return ret;
+        }
+
+        /** tuneTool method
+         * - fits the weights to a position file, writes them and checks that the file loads
+         * @param positions the position file
+         * @param weights the weight file
+         * @param iterations the number of conjugate gradient steps
+         * @param ridge how much the weights are pulled to 0
+         * */
+        public static void tuneTool (Path positions, Path weights, int iterations, double ridge) throws IOException {
+            PatternEval eval = fit(positions, iterations, ridge);
+            eval.write(weights);
+            PatternEval.load(weights);
+            System.out.printf("wrote %s (%d bytes), version %d%n", weights, Files.size(weights), PatternEval.VERSION);
+        }
+    }
+
+    // ProbCut Class
+    static class ProbCut {
+        static final int MIN_DEPTH = 3;     // shallower searches are cheap enough to be searched in full
+        static final int MAX_DEPTH = 20;    // the deepest depth that can have parameters
+        static final int CHECKS = 2;        // the shallow searches that can be tried at a depth, the cheaper one first
+        static final int MIN_SAMPLES = 30;  // a depth pair with fewer positions than this in a phase isn't used
+
+        private static ProbCut standard;    // the parameters the engine plays with, loaded the first time they're needed
+
+        // by phase, depth and check: the depth of the shallow search (0 for no check), and the deep score predicted
+        // from the shallow score is a * shallow + b, give or take sigma (the standard deviation of the error)
+        int[][][] shallow = new int[PatternEval.PHASES][MAX_DEPTH+1][CHECKS];
+        double[][][] a = new double[PatternEval.PHASES][MAX_DEPTH+1][CHECKS];
+        double[][][] b = new double[PatternEval.PHASES][MAX_DEPTH+1][CHECKS];
+        double[][][] sigma = new double[PatternEval.PHASES][MAX_DEPTH+1][CHECKS];
+        double t = 1.5;     // how many sigmas past the window the prediction has to be for a cut
+
+        /** shallowDepth method
+         * - the depths of the shallow searches: about a half and a half minus 2 of the deep depth, with the same
+         *   parity, since odd and even depths score the same position differently
+         * @param depth the deep depth
+         * @param check the check, 0 for the cheaper one
+         * @return the shallow depth, 0 or less if there isn't one
+         * */
+        static int shallowDepth (int depth, int check){
+            int s = depth / 2;
+            if ((depth - s) % 2 != 0)
+                s--;
+            return s - 2 * (CHECKS - 1 - check);
+        }
+
+        /** standard method
+         * - the parameters of the --probcut file, or null if there isn't one or it's "off" (then the search is
+         *   full-width)
+         * */
+        public static synchronized ProbCut standard (){
+            String file = options.getOrDefault("probcut", PROBCUT);
+            if (standard == null && !file.equals("off") && Files.exists(Paths.get(file))){
+                try {
+                    standard = load(Paths.get(file));
+                }
+                catch (IOException | RuntimeException e){
+                    System.out.println("Could not load the ProbCut parameters, searching full-width: " + e.getMessage());
+                }
+            }
+            return file.equals("off") ? null : standard;
+        }
+
+        /** load method
+         * - reads a parameter file: a line of "phase depth shallow a b sigma" for every depth pair, # for comments
+         * - the cut threshold is --probcut-t (1.5)
+         * @param path the parameter file
+         * @throws IOException if the file can't be read or a line isn't right
+         * */
+        public static ProbCut load (Path path) throws IOException {
+            ProbCut ret = new ProbCut();
+            ret.t = Double.parseDouble(options.getOrDefault("probcut-t", "1.5"));
+            for (String line : Files.readAllLines(path)){
+                String[] words = line.trim().split("\\s+");
+                if (words[0].isEmpty() || words[0].startsWith("#"))
+                    continue;
+                if (words.length != 6)
+                    throw new IOException("not a ProbCut line: " + line);
+                int phase = Integer.parseInt(words[0]), depth = Integer.parseInt(words[1]), s = Integer.parseInt(words[2]);
+                int check = s == shallowDepth(depth, 0) ? 0 : s == shallowDepth(depth, 1) ? 1 : -1;
+                if (phase < 0 || phase >= PatternEval.PHASES || depth < MIN_DEPTH || depth > MAX_DEPTH || check < 0)
+                    throw new IOException("not a ProbCut depth pair: " + line);
+                ret.shallow[phase][depth][check] = s;
+                ret.a[phase][depth][check] = Double.parseDouble(words[3]);
+                ret.b[phase][depth][check] = Double.parseDouble(words[4]);
+                ret.sigma[phase][depth][check] = Double.parseDouble(words[5]);
+            }
+            return ret;
+        }
+
+        /** write method
+         * @param path the parameter file
+         * */
+        public void write (Path path) throws IOException {
+            ArrayList<String> lines = new ArrayList<>();
+            lines.add("# ProbCut parameters: phase depth shallow a b sigma, the deep score is a * shallow score + b");
+            for (int phase = 0; phase < PatternEval.PHASES; phase++){
+                for (int depth = MIN_DEPTH; depth <= MAX_DEPTH; depth++){
+                    for (int check = 0; check < CHECKS; check++){
+                        if (shallow[phase][depth][check] > 0)
+                            lines.add(String.format(Locale.ROOT, "%d %d %d %.4f %.2f %.2f", phase, depth, shallow[phase][depth][check],
+                                    a[phase][depth][check], b[phase][depth][check], sigma[phase][depth][check]));
+                    }
+                }
+            }
+            Files.write(path, lines);
+        }
+
+        /** calibrate method
+         * - searches positions of a position file to every depth up to maxDepth, full-width, and fits the deep scores
+         *   to the shallow scores of every depth pair and phase by least squares
+         * - positions that are won or lost within the depth, or too close to the end, are left out, since their
+         *   scores aren't evaluations
+         * @param positions the position file, from --selfplay
+         * @param samples the number of positions to search, spread over the file
+         * @param maxDepth the deepest depth to fit
+         * */
+        public static ProbCut calibrate (Path positions, int samples, int maxDepth) throws IOException {
+            int deepest = Math.min(MAX_DEPTH, maxDepth);
+            ArrayList<ArrayList<int[]>> scores = new ArrayList<>();    // by phase: the score of every depth
+            for (int phase = 0; phase < PatternEval.PHASES; phase++)
+                scores.add(new ArrayList<>());
+            AtomicInteger done = new AtomicInteger();
+            try (PositionFile file = PositionFile.open(positions)){
+                long count = file.count;
+                int n = (int) Math.min(samples, count);
+                ThreadLocal<algorithm8x8> searches = ThreadLocal.withInitial(() -> {
+                    algorithm8x8 search = new algorithm8x8(new Node(new Board(0, 0, true)), deepest, new TranspositionTable(16));
+                    search.probCut = null;
+                    return search;
+                });
+                IntStream.range(0, n).parallel().forEach(i -> {
+                    long[] position = file.get(i * count / n);
+                    BitBoard board = new BitBoard(true);
+                    board.black = position[0];
+                    board.white = position[1];
+                    board.hash = board.computeHash();
+                    int color = PositionFile.colorToMove(board);
+                    if (Long.bitCount(board.empty()) < deepest + 4 || board.possibleMoves(color) == 0)
+                        return;
+                    algorithm8x8 search = searches.get();
+                    int[] score = new int[deepest+1];
+                    for (int depth = 1; depth <= deepest; depth++){
+                        score[depth] = search.searchPosition(board, depth, -algorithm8x8.INFINITY, algorithm8x8.INFINITY, color);
+                        if (Math.abs(score[depth]) >= algorithm8x8.WIN / 2)
+                            return;
+                    }
+                    synchronized (scores){
+                        scores.get(PatternEval.phase(board)).add(score);
+                    }
+                    if (done.incrementAndGet() % Math.max(1, n / 10) == 0)
+                        System.out.println(done.get() + " positions searched");
+                });
+            }
+            ProbCut ret = new ProbCut();
+            for (int phase = 0; phase < PatternEval.PHASES; phase++){
+                for (int depth = MIN_DEPTH; depth <= deepest; depth++){
+                    for (int check = 0; check < CHECKS; check++){
+                        int s = shallowDepth(depth, check);
+                        if (s > 0 && scores.get(phase).size() >= MIN_SAMPLES)
+                            ret.fit(phase, depth, check, s, scores.get(phase));
+                    }
+                }
+            }
+            return ret;
+        }
+
+        /** fit method
+         * - helper method for calibrate
+         * - the least squares line of the deep scores against the shallow scores, and the deviation from it
+         * */
+        private void fit (int phase, int depth, int check, int s, ArrayList<int[]> scores){
+            double sx = 0, sy = 0, sxx = 0, sxy = 0;
+            int n = scores.size();
+            for (int[] score : scores){
+                sx += score[s];
+                sy += score[depth];
+                sxx += (double) score[s] * score[s];
+                sxy += (double) score[s] * score[depth];
+            }
+            double variance = sxx - sx * sx / n;
+            if (variance <= 0)
+                return;
+            double slope = (sxy - sx * sy / n) / variance, intercept = (sy - slope * sx) / n, error = 0;
+            for (int[] score : scores){
+                double e = score[depth] - (slope * score[s] + intercept);
+                error += e * e;
+            }
+            // a line that doesn't go up can't predict anything
+            if (slope <= 0)
+                return;
+            shallow[phase][depth][check] = s;
+            a[phase][depth][check] = slope;
+            b[phase][depth][check] = intercept;
+            sigma[phase][depth][check] = Math.sqrt(error / n);
+        }
+
+        /** calibrateTool method
+         * - calibrates, prints the parameters and writes them to the --probcut file
+         * */
+        public static void calibrateTool (Path positions, Path out, int samples, int maxDepth) throws IOException {
+            long start = System.nanoTime();
+            ProbCut probCut = calibrate(positions, samples, maxDepth);
+            System.out.printf("searched in %.1f s%n", (System.nanoTime() - start) / 1e9);
+            System.out.println("phase depth shallow      a       b   sigma");
+            for (int phase = 0; phase < PatternEval.PHASES; phase++){
+                for (int depth = MIN_DEPTH; depth <= MAX_DEPTH; depth++){
+                    for (int check = 0; check < CHECKS; check++){
+                        if (probCut.shallow[phase][depth][check] > 0)
+                            System.out.printf("%5d %5d %7d %6.3f %7.1f %7.1f%n", phase, depth, probCut.shallow[phase][depth][check],
+                                    probCut.a[phase][depth][check], probCut.b[phase][depth][check], probCut.sigma[phase][depth][check]);
+                    }
+                }
+            }
+            probCut.write(out);
+            load(out);
+            System.out.println("wrote " + out);
+        }
+    }
+
+    // Engine Interface
+    interface Engine {
+        /** newGame method
+         * - forgets what the engine learned in the last game, such as its transposition table
+         * */
+        void newGame ();
+
+        /** move method
+         * @param b the 8x8 board, it isn't changed
+         * @param color the color to move, it has at least one move
+         * @return the square of the move
+         * */
+        int move (BitBoard b, int color);
+
+        /** nodes method
+         * @return the nodes searched for the last move
+         * */
+        long nodes ();
+    }
+
+    // SearchEngine Class
+    static class SearchEngine implements Engine {
+        String spec;        // the settings of the engine, such as "movetime=100 eval=simple"
+        int depth;          // the deepest the engine searches
+        long moveTime;      // the time for every move in ms, 0 to search to depth every move
+        TranspositionTable table;   // kept for a whole game
+        EndgameSolver endgame;      // solves the end of the game, null with endgame=0
+        PatternEval patterns;       // the evaluation function, null for the old one
+        ProbCut probCut;            // the selective search parameters, null for a full-width search
+        boolean pvs;                // false for plain alpha-beta
+        int aspiration;             // the aspiration window, 0 for none
+        OpeningBook book;           // the book the first moves come from, can be null
+        long nodes;         // the nodes of the last move
+
+        /** SearchEngine constructor class
+         * - the algorithm8x8 search with the settings of a spec: "key=value" pairs split by spaces or commas
+         *   from depth (60), movetime (100, 0 with a depth), hash (16), endgame (20), exact (16),
+         *   eval (pattern or simple), weights (a weight file), probcut (a ProbCut file or off), pvs (on or off),
+         *   aspiration (40, 0 for none) and book (a book file)
+         * @param spec the settings
+         * @throws IOException if the weight file or the book can't be read
+         * */
+        public SearchEngine (String spec) throws IOException {
+            this.spec = spec;
+            HashMap<String, String> settings = new HashMap<>();
+            for (String setting : spec.trim().split("[\\s,]+")){
+                if (setting.isEmpty())
+                    continue;
+                int split = setting.indexOf('=');
+                if (split < 0)
+                    throw new IllegalArgumentException("not a key=value setting: " + setting);
+                settings.put(setting.substring(0, split), setting.substring(split+1));
+            }
+            depth = Integer.parseInt(settings.getOrDefault("depth", "60"));
+            moveTime = Long.parseLong(settings.getOrDefault("movetime", settings.containsKey("depth") ? "0" : "100"));
+            table = new TranspositionTable(Integer.parseInt(settings.getOrDefault("hash", "16")));
+            int endgameEmpties = Integer.parseInt(settings.getOrDefault("endgame", "20"));
+            int exactEmpties = Math.min(endgameEmpties, Integer.parseInt(settings.getOrDefault("exact", "16")));
+            if (endgameEmpties > 0)
+                endgame = new EndgameSolver(Integer.parseInt(settings.getOrDefault("hash", "16")), endgameEmpties, exactEmpties);
+            if (settings.containsKey("weights"))
+                patterns = PatternEval.load(Paths.get(settings.get("weights")));
+            else if (!"simple".equals(settings.get("eval")))
+                patterns = PatternEval.standard();
+            if (settings.containsKey("probcut"))
+                probCut = settings.get("probcut").equals("off") ? null : ProbCut.load(Paths.get(settings.get("probcut")));
+            else
+                probCut = ProbCut.standard();
+            pvs = !"off".equals(settings.get("pvs"));
+            aspiration = Integer.parseInt(settings.getOrDefault("aspiration", String.valueOf(algorithm8x8.ASPIRATION)));
+            if (settings.containsKey("book"))
+                book = OpeningBook.load(Paths.get(settings.get("book")));
+        }
+
+        public void newGame (){
+            table.clear();
+            if (endgame != null)
+                endgame.table.clear();
+        }
+
+        public int move (BitBoard b, int color){
+            int bookMove = book != null ? book.probe(b, color) : -1;
+            if (bookMove >= 0){
+                nodes = 0;
+                return bookMove;
+            }
+            Board board = b.toBoard(color, color);
+            Node node = new Node(board);
+            algorithm8x8 search = new algorithm8x8(node, depth, table);
+            search.patterns = patterns;
+            search.probCut = probCut;
+            search.pvs = pvs;
+            search.aspiration = aspiration;
+            search.endgame = endgame;
+            // without a movetime the depth is the only limit
+            TimeControl clock = new TimeControl(moveTime > 0 ? moveTime : Long.MAX_VALUE / 4);
+            clock.startMove(Long.bitCount(b.empty()));
+            search.iterativeDeepening(node, board.possibleMoves(board, color).keySet(), clock);
+            nodes = search.nodes;
+            return b.square(search.bestMove());
+        }
+
+        public long nodes (){
+            return nodes;
+        }
+    }
+
+    // Tournament Class
+    static class Tournament {
+        static final double ALPHA = 0.05;   // the chance of the SPRT accepting elo1 when elo0 is true
+        static final double BETA = 0.05;    // the chance of it accepting elo0 when elo1 is true
+        static final double PRIOR = 0.5;    // the games every result starts with for the variance
+
+        String[] specs;     // the settings of the 2 engines
+        int games;          // the most games to play
+        int threads;        // the games played at once
+        ArrayList<Node> openings;   // the start of the games, each one played twice with the colors swapped
+        double elo0, elo1;  // the SPRT checks if the first engine is elo0 or elo1 better than the second one
+
+        // the results so far, for the first engine
+        int wins, draws, losses;
+        long[] moves = new long[2], time = new long[2], nodes = new long[2];   // by engine, time in ns
+        String decision;    // what the SPRT decided, null until it decides
+        volatile boolean stopped;   // set when the SPRT decides, so no more games are started
+
+        /** Tournament constructor class
+         * @param specs the settings of the 2 engines (see SearchEngine)
+         * @param games the most games to play
+         * @param threads the games played at once
+         * @param plies the random moves of every opening
+         * @param seed the seed of the openings
+         * @param elo0 the Elo difference of the SPRT's null hypothesis
+         * @param elo1 the Elo difference of its other hypothesis
+         * */
+        public Tournament (String[] specs, int games, int threads, int plies, long seed, double elo0, double elo1){
+            this.specs = specs;
+            this.games = games;
+            this.threads = threads;
+            this.elo0 = elo0;
+            this.elo1 = elo1;
+            openings = randomPositions((games + 1) / 2, plies, seed);
+        }
+
+        /** run method
+         * - plays the games on a pool of threads, each thread with its own 2 engines, and prints the results
+         *   as they come in and at the end
+         * */
+        public void run () throws InterruptedException {
+            System.out.println("engine 1: " + specs[0]);
+            System.out.println("engine 2: " + specs[1]);
+            long start = System.nanoTime();
+            ThreadLocal<Engine[]> engines = ThreadLocal.withInitial(() -> {
+                try {
+                    return new Engine[]{new SearchEngine(specs[0]), new SearchEngine(specs[1])};
+                }
+                catch (IOException e){
+                    throw new UncheckedIOException(e);
+                }
+            });
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            for (int g = 0; g < games; g++){
+                int game = g;
+                pool.execute(() -> {
+                    if (stopped)
+                        return;
+                    try {
+                        Engine[] e = engines.get();
+                        // the first engine is black in the even games and white in the odd ones
+                        int first = game % 2;
+                        Node opening = openings.get(game / 2);
+                        int result = play(e, first, new BitBoard(opening.state), opening.state.currentPlayer);
+                        record(first == 0 ? result : -result);
+                    }
+                    catch (RuntimeException e){
+                        System.out.println("game " + game + " failed: " + e);
+                        stopped = true;
+                    }
+                });
+            }
+            pool.shutdown();
+            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+            report((System.nanoTime() - start) / 1000000000);
+        }
+
+        /** play method
+         * - helper method for run
+         * - plays one game from an opening
+         * @param engines the 2 engines
+         * @param first the color of the first engine
+         * @param b the opening, it is played on
+         * @param color the color to move
+         * @return the difference in pieces at the end for black
+         * */
+        private int play (Engine[] engines, int first, BitBoard b, int color){
+            for (Engine e : engines)
+                e.newGame();
+            long[] gameMoves = new long[2], gameTime = new long[2], gameNodes = new long[2];
+            // the game is recorded from the opening on
+            byte[] record = new byte[128];
+            int plies = 0, firstColor = color;
+            BitBoard opening = new BitBoard(b);
+            while (true){
+                int other = (color+1)%2;
+                if (b.possibleMoves(color) == 0){
+                    if (b.possibleMoves(other) == 0)
+                        break;
+                    record[plies++] = (byte) GameRecord.PASS;
+                    color = other;
+                    continue;
+                }
+                int engine = color == first ? 0 : 1;
+                long begin = System.nanoTime();
+                int move = engines[engine].move(b, color);
+                gameTime[engine] += System.nanoTime() - begin;
+                gameNodes[engine] += engines[engine].nodes();
+                gameMoves[engine]++;
+                if (b.makeMove(move, color) == 0)
+                    throw new IllegalStateException("engine " + (engine+1) + " played an illegal move " + move);
+                record[plies++] = (byte) move;
+                color = other;
+            }
+            GameRecord.record(opening, firstColor, record, plies, b, GameRecord.BLACK_ENGINE | GameRecord.WHITE_ENGINE);
+            synchronized (this){
+                for (int i = 0; i < 2; i++){
+                    moves[i] += gameMoves[i];
+                    time[i] += gameTime[i];
+                    nodes[i] += gameNodes[i];
+                }
+            }
+            return b.numSquares(0) - b.numSquares(1);
+        }
+
+        /** record method
+         * - helper method for run
+         * - adds the result of a game, prints the standings every so often and stops when the SPRT decides
+         * @param result the difference in pieces for the first engine
+         * */
+        private synchronized void record (int result){
+            if (result > 0)
+                wins++;
+            else if (result < 0)
+                losses++;
+            else
+                draws++;
+            int played = wins + draws + losses;
+            double llr = llr();
+            if (decision == null && llr >= Math.log((1 - BETA) / ALPHA))
+                decision = "H1 accepted: the first engine is at least " + elo1 + " Elo better";
+            else if (decision == null && llr <= Math.log(BETA / (1 - ALPHA)))
+                decision = "H0 accepted: the first engine isn't " + elo1 + " Elo better";
+            if (decision != null)
+                stopped = true;
+            if (played % Math.max(1, games / 20) == 0 || stopped)
+                System.out.printf("%d games: +%d =%d -%d  Elo %s  LLR %.2f%n", played, wins, draws, losses, elo(), llr);
+        }
+
+        /** score method
+         * @return the average points of a game for the first engine (1 for a win, 1/2 for a draw)
+         * */
+        public double score (){
+            return (wins + draws / 2.0) / Math.max(1, wins + draws + losses);
+        }
+
+        /** variance method
+         * - every result counts PRIOR games more, so the variance isn't 0 when all of the games had the same
+         *   result and the error bars and the LLR still mean something
+         * @return the variance of the points of one game
+         * */
+        public double variance (){
+            double w = wins + PRIOR, d = draws + PRIOR, l = losses + PRIOR;
+            double s = (w + d/2) / (w + d + l);
+            return (w * (1-s)*(1-s) + d * (0.5-s)*(0.5-s) + l * s*s) / (w + d + l);
+        }
+
+        /** elo method
+         * @return the Elo difference of the first engine and its 95% error bars
+         * */
+        public String elo (){
+            int n = wins + draws + losses;
+            double error = 1.96 * Math.sqrt(variance() / Math.max(1, n));
+            double elo = elo(score());
+            double high = elo(score() + error) - elo, low = elo - elo(score() - error);
+            return String.format("%+.1f (-%.1f, +%.1f)", elo, low, high);
+        }
+
+        /** elo method
+         * @param score the average points of a game
+         * @return the Elo difference that gives that score, clamped to a score of 0.3% or 99.7% (about +-1009)
+         * */
+        static double elo (double score){
+            score = Math.max(0.003, Math.min(0.997, score));
+            return -400 * Math.log10(1 / score - 1);
+        }
+
+        /** llr method
+         * - the log-likelihood ratio of elo1 against elo0, with the normal approximation of the game results
+         *   (the same as fishtest's GSPRT)
+         * */
+        public double llr (){
+            int n = wins + draws + losses;
+            double variance = variance();
+            if (n == 0)
+                return 0;
+            double s0 = 1 / (1 + Math.pow(10, -elo0 / 400)), s1 = 1 / (1 + Math.pow(10, -elo1 / 400));
+            return (s1 - s0) * (2*score() - s0 - s1) / (2 * variance / n);
+        }
+
+        /** report method
+         * - helper method for run
+         * */
+        private void report (long seconds){
+            int played = wins + draws + losses;
+            System.out.printf("%d games in %d s: +%d =%d -%d, score %.1f%%, Elo %s%n", played, seconds, wins, draws,
+                    losses, 100 * score(), elo());
+            System.out.printf("SPRT elo0 %.1f elo1 %.1f: LLR %.2f (%.2f, %.2f), %s%n", elo0, elo1, llr(),
+                    Math.log(BETA / (1 - ALPHA)), Math.log((1 - BETA) / ALPHA), decision == null ? "no decision" : decision);
+            for (int i = 0; i < 2; i++){
+                long n = Math.max(1, moves[i]);
+                System.out.printf("engine %d: %.1f ms/move, %d nodes/move%n", i+1, time[i] / 1e6 / n, nodes[i] / n);
+            }
+        }
+    }
+
+    // OpeningBook Class
+    static class OpeningBook {
+        static final int MAGIC = 0x52424F4B;    // "RBOK", the start of every book file
+        static final int VERSION = 2;           // changes when the layout of the file or the keys change
+        static final int HEADER = 16;           // the magic, version, count and an unused int
+        static final int RECORD = 16;           // the long key, int weight, short score, byte move and an unused byte
+
+        ByteBuffer buffer;  // the book, memory-mapped from the file
+        int count;          // the number of moves in the book
+        Random random = new Random();   // picks between the moves of a position
+
+        /** OpeningBook constructor class
+         * - the book is a list of (position, move) records sorted by the key of the position, so all of the
+         *   moves of a position are next to each other and are found with a binary search
+         * - a position and its 7 rotations and mirrors have the same key, and the move is stored turned the
+         *   same way as the canonical form of the position (see canonical)
+         * @param buffer the bytes of a book file
+         * @throws IOException if the buffer isn't a book of this version
+         * */
+        private OpeningBook (ByteBuffer buffer) throws IOException {
+            if (buffer.capacity() < HEADER || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION)
+                throw new IOException("not a version " + VERSION + " opening book");
+            this.buffer = buffer;
+            count = buffer.getInt(8);
+            if (buffer.capacity() != HEADER + (long) count * RECORD)
+                throw new IOException("the opening book is the wrong size");
+        }
+
+        /** load method
+         * @param path the book file
+         * @return the book, memory-mapped, or null if there isn't a file
+         * @throws IOException if the file can't be read
+         * */
+        public static OpeningBook load (Path path) throws IOException {
+            if (!Files.exists(path))
+                return null;
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)){
+                return new OpeningBook(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+            }
+        }
+
+        /** probe method
+         * - finds the moves of a position and picks one at random, weighted by how good the moves are
+         * @param b the 8x8 board
+         * @param color the color to move
+         * @return the square of the move, or -1 if the position isn't in the book
+         * */
+        public int probe (BitBoard b, int color){
+            int[] turn = new int[1];
+            long key = canonical(b.black, b.white, color, turn);
+            int first = find(key);
+            if (first < 0)
+                return -1;
+            long total = 0;
+            int last = first;
+            for (; last < count && key(last) == key; last++)
+                total += weight(last);
+            long pick = (long) (random.nextDouble() * total);
+            for (int i = first; i < last; i++){
+                pick -= weight(i);
+                if (pick < 0)
+                    return Symmetry.inverse(move(i), turn[0], 8);
+            }
+            return Symmetry.inverse(move(last-1), turn[0], 8);
+        }
+
+        /** find method
+         * - helper method for probe
+         * - binary search for the first record of a key
+         * @return the record, or -1 if the key isn't in the book
+         * */
+        private int find (long key){
+            int low = 0, high = count;
+            while (low < high){
+                int middle = (low + high) >>> 1;
+                if (Long.compareUnsigned(key(middle), key) < 0)
+                    low = middle + 1;
+                else
+                    high = middle;
+            }
+            return low < count && key(low) == key ? low : -1;
+        }
+
+        public long key (int i){ return buffer.getLong(HEADER + i * RECORD); }
+        public int weight (int i){ return buffer.getInt(HEADER + i * RECORD + 8); }
+        public int score (int i){ return buffer.getShort(HEADER + i * RECORD + 12); }
+        public int move (int i){ return buffer.get(HEADER + i * RECORD + 14); }
+
+        /** canonical method
+         * - the key of the canonical form of the position (see Symmetry.canonical)
+         * @param black the black pieces
+         * @param white the white pieces
+         * @param color the color to move
+         * @param turn gets the transformation to the canonical form, so moves can be turned the same way
+         * @return the key of the position
+         * */
+        static long canonical (long black, long white, int color, int[] turn){
+            turn[0] = Symmetry.canonical(black, white, 8);
+            return key(Symmetry.transform(black, turn[0], 8), Symmetry.transform(white, turn[0], 8), color);
+        }
+
+        /** key method
+         * - helper method for canonical
+         * - mixes the pieces and the color to move into 64 bits
+         * */
+        private static long key (long black, long white, int color){
+            long h = black * 0x9E3779B97F4A7C15L ^ Long.rotateLeft(white * 0xC2B2AE3D27D4EB4FL, 31) ^ color;
+            h = (h ^ (h >>> 30)) * 0xBF58476D1CE4E5B9L;
+            h = (h ^ (h >>> 27)) * 0x94D049BB133111EBL;
+            return h ^ (h >>> 31);
+        }
+
+        /** build method
+         * - makes a book by searching every move of the positions from the start, and going on from the moves
+         *   that are close enough to the best one
+         * @param plies how many moves deep the book goes
+         * @param depth the depth of the search of each move
+         * @param width the most moves kept in each position
+         * @param margin how much worse than the best move a move can be and still be kept, in evaluation units
+         * @return the records of the book, as {key, weight, score, move}
+         * */
+        public static ArrayList<long[]> build (int plies, int depth, int width, int margin){
+            ArrayList<long[]> records = new ArrayList<>();
+            HashSet<Long> seen = new HashSet<>();
+            algorithm8x8 search = new algorithm8x8(new Node(new Board(0, 0, true)), depth, new TranspositionTable(64));
+            search.rootMoves = -1L;
+            BitBoard b = new BitBoard(true);
+            b.enableFeatures();
+            for (int color = 0; color < 2; color++)
+                expand(b, color, 0, plies, depth, width, margin, search, seen, records);
+            return records;
+        }
+
+        /** expand method
+         * - helper method for build
+         * */
+        private static void expand (BitBoard b, int color, int ply, int plies, int depth, int width, int margin,
+                                    algorithm8x8 search, HashSet<Long> seen, ArrayList<long[]> records){
+            int other = (color+1)%2;
+            long moves = b.possibleMoves(color);
+            if (ply >= plies || moves == 0)
+                return;
+            int[] turn = new int[1];
+            long key = canonical(b.black, b.white, color, turn);
+            if (!seen.add(key))
+                return;
+            int[] list = new int[64];
+            int n = BitBoard.moveList(moves, list);
+            int[] scores = new int[n];
+            Integer[] order = new Integer[n];
+            for (int i = 0; i < n; i++){
+                long flipped = b.makeMove(list[i], color);
+                scores[i] = -search.searchPosition(b, depth-1, -algorithm8x8.INFINITY, algorithm8x8.INFINITY, other);
+                b.unmakeMove(list[i], color, flipped);
+                order[i] = i;
+            }
+            Arrays.sort(order, (x, y) -> scores[y] - scores[x]);
+            int best = scores[order[0]];
+            for (int k = 0; k < Math.min(width, n) && best - scores[order[k]] <= margin; k++){
+                int i = order[k];
+                // the best move gets the most weight, one at the edge of the margin the least
+                long weight = 1 + 100L * (margin + 1 - (best - scores[i])) / (margin + 1);
+                records.add(new long[]{key, weight, scores[i], Symmetry.square(list[i], turn[0], 8)});
+                long flipped = b.makeMove(list[i], color);
+                expand(b, other, ply+1, plies, depth, width, margin, search, seen, records);
+                b.unmakeMove(list[i], color, flipped);
+            }
+        }
+
+        /** write method
+         * - sorts the records by key and writes the header and then the records
+         * @param records the records of build
+         * @param path the book file
+         * @throws IOException if the file can't be written
+         * */
+        public static void write (ArrayList<long[]> records, Path path) throws IOException {
+            records.sort((x, y) -> x[0] != y[0] ? Long.compareUnsigned(x[0], y[0]) : Long.compare(y[1], x[1]));
+            ByteBuffer out = ByteBuffer.allocate(HEADER + records.size() * RECORD);
+            out.putInt(MAGIC).putInt(VERSION).putInt(records.size()).putInt(0);
+            for (long[] r : records)
+                out.putLong(r[0]).putInt((int) r[1]).putShort((short) Math.max(Short.MIN_VALUE,
+                        Math.min(Short.MAX_VALUE, r[2]))).put((byte) r[3]).put((byte) 0);
+            out.flip();
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)){
+                while (out.hasRemaining())
+                    channel.write(out);
+            }
+        }
+
+        /** buildTool method
+         * - builds a book, writes it and times the lookups of every position in it
+         * @param path the book file
+         * */
+        public static void buildTool (Path path, int plies, int depth, int width, int margin) throws IOException {
+            long start = System.nanoTime();
+            ArrayList<long[]> records = build(plies, depth, width, margin);
+            long time = (System.nanoTime() - start) / 1000000000;
+            write(records, path);
+            OpeningBook book = load(path);
+            System.out.printf("%d moves in %d s, %s is %d bytes%n", book.count, time, path, Files.size(path));
+
+            // every position of the book is looked up from all 8 sides
+            ArrayList<BitBoard> positions = new ArrayList<>();
+            ArrayList<Integer> colors = new ArrayList<>();
+            BitBoard b = new BitBoard(true);
+            collect(b, 0, plies, book, positions, colors, new HashSet<>());
+            collect(b, 1, plies, book, positions, colors, new HashSet<>());
+            int probes = 0, misses = 0;
+            // the first round only warms up the JIT
+            for (int round = 0; round < 2; round++){
+                probes = 0;
+                misses = 0;
+                start = System.nanoTime();
+                for (int i = 0; i < positions.size(); i++){
+                    BitBoard p = positions.get(i);
+                    for (int t = 0; t < Symmetry.COUNT; t++){
+                        BitBoard turned = new BitBoard(p);
+                        turned.black = Symmetry.transform(p.black, t, 8);
+                        turned.white = Symmetry.transform(p.white, t, 8);
+                        int move = book.probe(turned, colors.get(i));
+                        probes++;
+                        if (move < 0 || (turned.possibleMoves(colors.get(i)) & (1L << move)) == 0)
+                            misses++;
+                    }
+                }
+            }
+            System.out.printf("%d positions looked up %d times, %.2f us a lookup, %d misses or illegal moves%n",
+                    positions.size(), probes, (System.nanoTime() - start) / 1000.0 / Math.max(1, probes), misses);
+        }
+
+        /** collect method
+         * - helper method for buildTool
+         * - finds the positions of the book by following its moves from the start
+         * */
+        private static void collect (BitBoard b, int color, int plies, OpeningBook book, ArrayList<BitBoard> positions,
+                                     ArrayList<Integer> colors, HashSet<Long> seen){
+            int[] turn = new int[1];
+            long key = canonical(b.black, b.white, color, turn);
+            int first = book.find(key);
+            if (first < 0 || !seen.add(key))
+                return;
+            positions.add(new BitBoard(b));
+            colors.add(color);
+            for (int i = first; i < book.count && book.key(i) == key; i++){
+                int move = Symmetry.inverse(book.move(i), turn[0], 8);
+                long flipped = b.makeMove(move, color);
+                collect(b, (color+1)%2, plies, book, positions, colors, seen);
+                b.unmakeMove(move, color, flipped);
+            }
+        }
+    }
+
+    // EngineServer Class
+    static class EngineServer implements Closeable {
+        ServerSocket server;        // listens on localhost
+        Thread acceptor;            // accepts the connections and starts a session for each one
+        ExecutorService sessions;   // a thread per session, which mostly waits for the next line
+        ExecutorService workers;    // the searches of every session, one thread per core
+        BlockingQueue<TranspositionTable> tables = new LinkedBlockingQueue<>();   // the tables that aren't in use
+        AtomicInteger tablesMade = new AtomicInteger(), tablesReused = new AtomicInteger();
+        AtomicInteger open = new AtomicInteger(), opened = new AtomicInteger();  // the sessions open now and ever
+        int maxTables;      // the most tables made, after that a session searches without one
+        int megabytes;      // the size of every table
+        long moveTime;      // the time of a move in ms if "go" doesn't give one
+        PatternEval patterns;       // the evaluation function, shared by every search
+        OpeningBook book;           // the book the first moves come from, can be null
+        ThreadLocal<EndgameSolver> solvers;     // one endgame solver for every worker
+        Latencies latencies = new Latencies();  // the time of every "go", from reading the line to writing the move
+
+        /** EngineServer constructor class
+         * - an 8x8 engine for many games at once over a line protocol on localhost, one command per line:
+         *   new, position <64 squares from a1 on> <B or W>, play <move or pass>, go [ms], board, stats, quit
+         * - every answer is one line: "ok", "move <move or pass>", "board <squares> <B or W>", "stats ..."
+         *   or "error <reason>"
+         * - the searches run on a fixed pool of workers, so a lot of sessions searching at once wait in its queue
+         *   instead of taking the cores from the sessions that are reading and writing
+         * @param port the port, 0 for any free one
+         * @param threads the number of search workers
+         * @param maxTables the most transposition tables, they are handed from one game to the next
+         * @param megabytes the size of every table and of every worker's endgame table
+         * @param moveTime the time of a move in ms
+         * @throws IOException if the port can't be listened on
+         * */
+        public EngineServer (int port, int threads, int maxTables, int megabytes, long moveTime) throws IOException {
+            this.maxTables = maxTables;
+            this.megabytes = megabytes;
+            this.moveTime = moveTime;
+            patterns = "simple".equals(options.get("eval")) ? null : PatternEval.standard();
+            book = OpeningBook.load(Paths.get(options.getOrDefault("book", BOOK)));
+            solvers = ThreadLocal.withInitial(() -> new EndgameSolver(megabytes, option("endgame", 20),
+                    Math.min(option("endgame", 20), option("exact", 16))));
+            server = new ServerSocket(port, 1024, InetAddress.getLoopbackAddress());
+            AtomicInteger sessionThreads = new AtomicInteger(), workerThreads = new AtomicInteger();
+            sessions = Executors.newCachedThreadPool(r -> daemon(r, "session-" + sessionThreads.incrementAndGet()));
+            workers = Executors.newFixedThreadPool(threads, r -> daemon(r, "search-" + workerThreads.incrementAndGet()));
+            acceptor = daemon(this::accept, "acceptor");
+            acceptor.start();
+        }
+
+        /** daemon method
+         * - helper method for the constructor
+         * - the server's threads don't keep the program running on their own
+         * */
+        private static Thread daemon (Runnable r, String name){
+            Thread t = new Thread(r, name);
+            t.setDaemon(true);
+            return t;
+        }
+
+        /** accept method
+         * - accepts connections until the server is closed
+         * */
+        private void accept (){
+            while (!server.isClosed()){
+                try {
+                    Socket socket = server.accept();
+                    socket.setTcpNoDelay(true);
+                    open.incrementAndGet();
+                    opened.incrementAndGet();
+                    sessions.execute(new Session(socket));
+                }
+                catch (IOException e){
+                    if (!server.isClosed())
+                        System.out.println("Could not accept a connection: " + e.getMessage());
+                }
+            }
+        }
+
+        /** port method
+         * @return the port the server listens on
+         * */
+        public int port (){
+            return server.getLocalPort();
+        }
+
+        /** acquire method
+         * - takes a table from the pool, or makes one if there are less than maxTables
+         * @return an empty table, or null if every table is in use
+         * */
+        TranspositionTable acquire (){
+            TranspositionTable table = tables.poll();
+            if (table != null){
+                tablesReused.incrementAndGet();
+                return table;
+            }
+            if (tablesMade.incrementAndGet() <= maxTables)
+                return new TranspositionTable(megabytes);
+            tablesMade.decrementAndGet();
+            return null;
+        }
+
+        /** release method
+         * - empties a table and puts it back in the pool
+         * @param table the table, can be null
+         * */
+        void release (TranspositionTable table){
+            if (table == null)
+                return;
+            table.clear();
+            tables.offer(table);
+        }
+
+        /** search method
+         * - finds the engine's move, on a worker thread
+         * @param b the 8x8 board
+         * @param color the color to move, which has a move
+         * @param table the session's table, can be null
+         * @param time the time of the move in ms
+         * @return the square of the move
+         * */
+        int search (BitBoard b, int color, TranspositionTable table, long time){
+            int bookMove = book != null ? book.probe(b, color) : -1;
+            if (bookMove >= 0)
+                return bookMove;
+            Board board = b.toBoard(color, color);
+            Node node = new Node(board);
+            algorithm8x8 search = new algorithm8x8(node, 60, table);
+            search.patterns = patterns;
+            search.endgame = solvers.get();
+            TimeControl clock = new TimeControl(time);
+            clock.startMove(Long.bitCount(b.empty()));
+            search.iterativeDeepening(node, board.possibleMoves(board, color).keySet(), clock);
+            return b.square(search.bestMove());
+        }
+
+        /** stats method
+         * @return the sessions, tables and move times so far, as the answer to "stats"
+         * */
+        public String stats (){
+            return "stats sessions " + open.get() + " opened " + opened.get() + " tables " + tablesMade.get()
+                    + " reused " + tablesReused.get() + " " + latencies.summary();
+        }
+
+        /** close method
+         * - stops listening and closes the pools, the sessions that are open are cut off
+         * */
+        public void close () throws IOException {
+            server.close();
+            sessions.shutdownNow();
+            workers.shutdownNow();
+        }
+
+        /** squares method
+         * @return the squares of a board from a1 on: B, W or - for empty, the same as --position
+         * */
+        static String squares (BitBoard b){
+            StringBuilder ret = new StringBuilder();
+            for (int sq = 0; sq < 64; sq++)
+                ret.append((b.black >>> sq & 1) != 0 ? 'B' : (b.white >>> sq & 1) != 0 ? 'W' : '-');
+            return ret.toString();
+        }
+
+        // Session Class
+        class Session implements Runnable {
+            final Socket socket;
+            BitBoard board = new BitBoard(true);
+            int color;                  // the color to move
+            TranspositionTable table;   // taken from the pool at the first search of a game, given back at the end
+
+            // the game so far, for --record
+            BitBoard start = new BitBoard(true);
+            int first;                  // the color that moved first
+            byte[] moves = new byte[128];
+            int plies;
+            int engine;                 // GameRecord.BLACK_ENGINE and WHITE_ENGINE, for the colors go was sent for
+
+            Session (Socket socket){
+                this.socket = socket;
+            }
+
+            /** endGame method
+             * - records the game so far and starts a new one from a position
+             * */
+            private void endGame (BitBoard b, int color){
+                GameRecord.record(start, first, moves, plies, board, engine);
+                board = b;
+                start = new BitBoard(b);
+                this.color = first = color;
+                plies = engine = 0;
+            }
+
+            /** addMove method
+             * @param move the square of a move, or GameRecord.PASS
+             * */
+            private void addMove (int move){
+                if (plies < moves.length)
+                    moves[plies++] = (byte) move;
+            }
+
+            public void run (){
+                try (socket;
+                     BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+                     PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(socket.getOutputStream())), true)){
+                    String line;
+                    while ((line = in.readLine()) != null){
+                        long begin = System.nanoTime();
+                        String[] words = line.trim().split("\\s+");
+                        String answer = command(words);
+                        out.println(answer);
+                        if (words[0].equals("go") && answer.startsWith("move"))
+                            latencies.add(System.nanoTime() - begin);
+                        if (words[0].equals("quit"))
+                            break;
+                    }
+                }
+                catch (IOException e){
+                    // the client went away, the session just ends
+                }
+                finally {
+                    endGame(board, color);
+                    release(table);
+                    open.decrementAndGet();
+                }
+            }
+
+            /** command method
+             * - helper method for run
+             * @param words the words of a line
+             * @return the answer
+             * */
+            private String command (String[] words){
+                switch (words[0].toLowerCase()){
+                    case "new":
+                        release(table);
+                        table = null;
+                        endGame(new BitBoard(true), 0);
+                        return "ok";
+                    case "position":
+                        Board parsed = words.length == 3 && words[1].length() == 64 ? Perft.parse(words[1], 0) : null;
+                        if (parsed == null || !words[2].matches("[BbWw]"))
+                            return "error usage: position <64 squares> <B or W>";
+                        endGame(new BitBoard(parsed), words[2].equalsIgnoreCase("B") ? 0 : 1);
+                        return "ok";
+                    case "play":
+                        if (words.length != 2)
+                            return "error usage: play <move or pass>";
+                        if (words[1].equals("pass") ? board.possibleMoves(color) != 0 || board.possibleMoves((color+1)%2) == 0
+                                : !board.move(words[1], color))
+                            return "error illegal move " + words[1];
+                        addMove(words[1].equals("pass") ? GameRecord.PASS : board.square(words[1]));
+                        color = (color+1)%2;
+                        return "ok";
+                    case "go":
+                        if (words.length > 1 && !words[1].matches("\\d{1,9}"))
+                            return "error usage: go [ms]";
+                        return go(words.length > 1 ? Long.parseLong(words[1]) : moveTime);
+                    case "board":
+                        return "board " + squares(board) + " " + (color == 0 ? "B" : "W");
+                    case "stats":
+                        return stats();
+                    case "quit":
+                        return "bye";
+                    default:
+                        return "error unknown command " + words[0];
+                }
+            }
+
+            /** go method
+             * - helper method for command
+             * - the engine moves for the color to move, the search waits its turn for a worker
+             * */
+            private String go (long time){
+                int other = (color+1)%2;
+                if (board.possibleMoves(color) == 0){
+                    if (board.possibleMoves(other) == 0)
+                        return "error game over";
+                    addMove(GameRecord.PASS);
+                    color = other;
+                    return "move pass";
+                }
+                engine |= color == 0 ? GameRecord.BLACK_ENGINE : GameRecord.WHITE_ENGINE;
+                if (table == null)
+                    table = acquire();
+                BitBoard position = new BitBoard(board);
+                int moving = color;
+                TranspositionTable t = table;
+                try {
+                    int move = workers.submit(() -> search(position, moving, t, time)).get();
+                    board.makeMove(move, color);
+                    addMove(move);
+                    color = other;
+                    return "move " + board.location(move);
+                }
+                catch (InterruptedException | RejectedExecutionException e){
+                    Thread.currentThread().interrupt();
+                    return "error the server is closing";
+                }
+                catch (ExecutionException e){
+                    return "error " + e.getCause();
+                }
+            }
+        }
+
+        // Latencies Class
+        static class Latencies {
+            static final int LIMIT = 1 << 16;   // only the times of the last moves are kept
+            long[] times = new long[LIMIT];     // in ns, used as a ring
+            long count;
+
+            synchronized void add (long nanos){
+                times[(int) (count++ % LIMIT)] = nanos;
+            }
+
+            /** summary method
+             * @return the number of moves and the 50th, 90th and 99th percentile and the longest time in ms
+             * */
+            synchronized String summary (){
+                int n = (int) Math.min(count, LIMIT);
+                if (n == 0)
+                    return "moves 0";
+                long[] sorted = Arrays.copyOf(times, n);
+                Arrays.sort(sorted);
+                return String.format("moves %d p50 %.1f p90 %.1f p99 %.1f max %.1f ms", count, sorted[(n-1) * 50 / 100] / 1e6,
+                        sorted[(n-1) * 90 / 100] / 1e6, sorted[(n-1) * 99 / 100] / 1e6, sorted[n-1] / 1e6);
+            }
+        }
+
+        /** serverTool method
+         * - runs a server until the program is stopped, and prints its stats every minute
+         * @param port the port, on localhost
+         * */
+        public static void serverTool (int port, int threads, int maxTables, int megabytes, long moveTime)
+                throws IOException, InterruptedException {
+            EngineServer server = new EngineServer(port, threads, maxTables, megabytes, moveTime);
+            System.out.println("listening on " + server.server.getLocalSocketAddress() + " with " + threads + " search threads");
+            while (server.acceptor.isAlive()){
+                server.acceptor.join(60000);
+                System.out.println(server.stats());
+            }
+        }
+
+        /** testTool method
+         * - starts a server on a free port and plays games against it from many clients at once: every client plays
+         *   random moves and asks the engine for its moves, keeps its own board and checks it against the server's
+         *   at the end of every game
+         * @param clients the clients, each on a thread and connection of its own
+         * @param games the games of every client, the client is black in every other one
+         * @return true if there weren't any errors
+         * */
+        public static boolean testTool (int clients, int games, int threads, int maxTables, int megabytes, long moveTime)
+                throws IOException, InterruptedException {
+            try (EngineServer server = new EngineServer(0, threads, maxTables, megabytes, moveTime)){
+                System.out.println(clients + " clients, " + games + " games each, " + threads + " search threads, "
+                        + moveTime + " ms a move");
+                Latencies roundTrips = new Latencies();
+                ConcurrentLinkedQueue<String> errors = new ConcurrentLinkedQueue<>();
+                long start = System.nanoTime();
+                ExecutorService pool = Executors.newCachedThreadPool();
+                for (int c = 0; c < clients; c++){
+                    int client = c;
+                    pool.execute(() -> {
+                        try {
+                            client(server.port(), client, games, roundTrips, errors);
+                        }
+                        catch (IOException e){
+                            errors.add("client " + client + ": " + e);
+                        }
+                    });
+                }
+                pool.shutdown();
+                pool.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+                System.out.printf("%d games in %.1f s%n", clients * games, (System.nanoTime() - start) / 1e9);
+                System.out.println("client: " + roundTrips.summary());
+                System.out.println("server: " + server.stats());
+                errors.stream().limit(10).forEach(System.out::println);
+                System.out.println(errors.size() + " errors");
+                return errors.isEmpty();
+            }
+        }
+
+        /** client method
+         * - helper method for testTool
+         * - plays the games of one client
+         * */
+        private static void client (int port, int client, int games, Latencies roundTrips, Queue<String> errors)
+                throws IOException {
+            Random random = new Random(client);
+            try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+                 BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+                 PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(socket.getOutputStream())), true)){
+                socket.setTcpNoDelay(true);
+                for (int g = 0; g < games; g++){
+                    out.println("new");
+                    in.readLine();
+                    BitBoard b = new BitBoard(true);
+                    int color = 0, mine = (client + g) % 2;
+                    while (b.possibleMoves(color) != 0 || b.possibleMoves((color+1)%2) != 0){
+                        long moves = b.possibleMoves(color);
+                        String answer;
+                        if (color == mine){
+                            int[] list = new int[64];
+                            int n = BitBoard.moveList(moves, list);
+                            int move = n == 0 ? -1 : list[random.nextInt(n)];
+                            out.println("play " + (move < 0 ? "pass" : b.location(move)));
+                            answer = in.readLine();
+                            if (move >= 0)
+                                b.makeMove(move, color);
+                            if (!"ok".equals(answer))
+                                errors.add("client " + client + ": " + answer);
+                        }
+                        else {
+                            long begin = System.nanoTime();
+                            out.println("go");
+                            answer = in.readLine();
+                            roundTrips.add(System.nanoTime() - begin);
+                            String move = answer == null || !answer.startsWith("move ") ? null : answer.substring(5);
+                            if (move == null || (move.equals("pass") ? moves != 0 : !b.move(move, color))){
+                                errors.add("client " + client + ": " + answer);
+                                return;
+                            }
+                        }
+                        color = (color+1)%2;
+                    }
+                    out.println("board");
+                    String answer = in.readLine();
+                    String expected = "board " + squares(b) + " " + (color == 0 ? "B" : "W");
+                    if (!expected.equals(answer))
+                        errors.add("client " + client + ": " + answer + " instead of " + expected);
+                }
+                out.println("quit");
+                in.readLine();
+            }
+        }
+    }
+
+    // BatchAnalysis Class
+    static class BatchAnalysis {
+        int threads;        // the positions analyzed at once
+        int depth;          // the depth of every search
+        long moveTime;      // the time of every search in ms, 0 to search to depth
+        int megabytes;      // the table size of every thread
+        boolean ordered;    // true to write the results in the order of the input
+        PatternEval patterns;   // shared by every thread
+
+        Semaphore window;   // a permit for every position read but not written yet, so memory stays bounded
+        BufferedWriter out;
+        TreeMap<Long, String> pending = new TreeMap<>();    // finished results waiting for an earlier one, if ordered
+        long written;       // the results written so far
+        long nodes;         // the nodes of every search so far
+        volatile IOException failed;    // set if the output can't be written, the reading stops
+
+        /** BatchAnalysis constructor class
+         * - searches every position of a file on a pool of threads and writes a line for each one as soon as it's done
+         * - every thread has its own table and endgame solver, so the threads share nothing but the output
+         * @param threads the positions analyzed at once
+         * @param depth the depth of every search
+         * @param moveTime the time of every search in ms, 0 to search to depth
+         * @param megabytes the table size of every thread
+         * @param ordered true to write the results in the order of the input, holding back the ones that finish early
+         * */
+        public BatchAnalysis (int threads, int depth, long moveTime, int megabytes, boolean ordered){
+            this.threads = threads;
+            this.depth = depth;
+            this.moveTime = moveTime;
+            this.megabytes = megabytes;
+            this.ordered = ordered;
+            // at most 4 positions for every thread are read ahead, the reading waits when they are all taken
+            window = new Semaphore(4 * threads);
+            patterns = "simple".equals(options.get("eval")) ? null : PatternEval.standard();
+        }
+
+        /** run method
+         * - reads the positions one at a time, hands them to the threads and waits for the last result
+         * - a position file from --selfplay is read memory-mapped, anything else is read as text: a line of 64 squares
+         *   from a1 on (B or X, W or O, anything else empty) and the color to move, B or W. Lines starting with #
+         *   are skipped, and without a color, the color to move is worked out from the number of pieces.
+         * @param input the positions
+         * @param output where the results go
+         * @return the number of positions
+         * */
+        public long run (Path input, Writer output) throws IOException, InterruptedException {
+            out = new BufferedWriter(output);
+            out.write("# number position color move score depth nodes ms");
+            out.newLine();
+            ThreadLocal<Object[]> searchers = ThreadLocal.withInitial(() -> new Object[]{new TranspositionTable(megabytes),
+                    new EndgameSolver(megabytes, option("endgame", 20), Math.min(option("endgame", 20), option("exact", 16)))});
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            long count = 0;
+            try {
+                if (isPositionFile(input)){
+                    try (PositionFile file = PositionFile.open(input)){
+                        for (long i = 0; i < file.count && failed == null; i++){
+                            long[] position = file.get(i);
+                            BitBoard b = new BitBoard(true);
+                            b.black = position[0];
+                            b.white = position[1];
+                            submit(pool, searchers, count++, b, -1);
+                        }
+                    }
+                }
+                else {
+                    try (BufferedReader in = Files.newBufferedReader(input)){
+                        String line;
+                        while ((line = in.readLine()) != null && failed == null){
+                            String[] words = line.trim().split("\\s+");
+                            if (words[0].isEmpty() || words[0].startsWith("#"))
+                                continue;
+                            Board parsed = words[0].length() == 64 ? Perft.parse(words[0], 0) : null;
+                            if (parsed == null)
+                                throw new IOException("not a position: " + line);
+                            int color = words.length < 2 ? -1 : words[1].equalsIgnoreCase("W") ? 1 : 0;
+                            submit(pool, searchers, count++, new BitBoard(parsed), color);
+                        }
+                    }
+                }
+            }
+            finally {
+                // after a failed write the positions that haven't started are dropped
+                if (failed != null)
+                    pool.shutdownNow();
+                else
+                    pool.shutdown();
+                pool.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+                if (failed == null)
+                    out.flush();
+            }
+            if (failed != null)
+                throw failed;
+            return count;
+        }
+
+        /** isPositionFile method
+         * - helper method for run
+         * @return true if the file starts like a position file
+         * */
+        static boolean isPositionFile (Path path) throws IOException {
+            try (InputStream in = Files.newInputStream(path)){
+                byte[] magic = in.readNBytes(4);
+                return magic.length == 4 && ByteBuffer.wrap(magic).getInt() == PositionFile.MAGIC;
+            }
+        }
+
+        /** submit method
+         * - helper method for run
+         * - waits for a permit, so the reading never gets more than the window ahead of the writing, and stops
+         *   waiting if the output can't be written
+         * - a search that fails still writes a line, "error" and why, so its permit comes back and the ordered
+         *   output doesn't wait for it
+         * @param color the color to move, -1 to work it out from the number of pieces (black moves when it's even)
+         * */
+        private void submit (ExecutorService pool, ThreadLocal<Object[]> searchers, long number, BitBoard b, int color)
+                throws InterruptedException {
+            while (!window.tryAcquire(100, TimeUnit.MILLISECONDS)){
+                if (failed != null)
+                    return;
+            }
+            pool.execute(() -> {
+                String result = "error";
+                try {
+                    Object[] searcher = searchers.get();
+                    result = analyze(b, color, (TranspositionTable) searcher[0], (EndgameSolver) searcher[1]);
+                }
+                catch (RuntimeException e){
+                    result = "error " + e;
+                }
+                finally {
+                    write(number, number + " " + EngineServer.squares(b) + " " + result);
+                }
+            });
+        }
+
+        /** analyze method
+         * - helper method for submit
+         * @return the color, best move, score for the color to move, depth, nodes and time of a position
+         * */
+        private String analyze (BitBoard b, int color, TranspositionTable table, EndgameSolver endgame){
+            if (color < 0 || (b.possibleMoves(color) == 0 && b.possibleMoves((color+1)%2) != 0))
+                color = PositionFile.colorToMove(b);
+            String side = color == 0 ? "B" : "W";
+            if (b.possibleMoves(color) == 0)
+                return side + " end " + (b.numSquares(color) - b.numSquares((color+1)%2)) + " 0 0 0";
+            long begin = System.nanoTime();
+            Board board = b.toBoard(color, color);
+            Node node = new Node(board);
+            algorithm8x8 search = new algorithm8x8(node, depth, table);
+            search.patterns = patterns;
+            search.endgame = endgame;
+            TimeControl clock = new TimeControl(moveTime > 0 ? moveTime : Long.MAX_VALUE / 4);
+            clock.startMove(Long.bitCount(b.empty()));
+            search.iterativeDeepening(node, board.possibleMoves(board, color).keySet(), clock);
+            synchronized (this){
+                nodes += search.nodes;
+            }
+            return side + " " + search.bestMove() + " " + search.bestScore + " " + search.completedDepth + " "
+                    + search.nodes + " " + (System.nanoTime() - begin) / 1000000;
+        }
+
+        /** write method
+         * - helper method for submit
+         * - writes a result, or holds it back until the ones before it are written if the output is ordered,
+         *   and gives back a permit for every result taken out to be written
+         * - once a write has failed the results aren't written, they only give back their permits
+         * */
+        private synchronized void write (long number, String line){
+            if (failed != null){
+                window.release();
+                return;
+            }
+            pending.put(ordered ? number : written, line);
+            try {
+                for (String next; (next = pending.remove(written)) != null; written++){
+                    window.release();
+                    out.write(next);
+                    out.newLine();
+                }
+                out.flush();
+            }
+            catch (IOException e){
+                failed = e;
+                window.release(pending.size());
+                pending.clear();
+            }
+        }
+
+        /** analyzeTool method
+         * - analyzes a file of positions and prints how long it took, the results go to the output file or to the
+         *   console (then the summary is printed to the error stream, so the results can be piped)
+         * */
+        public static void analyzeTool (Path input, String output, int threads, int depth, long moveTime, int megabytes,
+                                        boolean ordered) throws IOException, InterruptedException {
+            BatchAnalysis batch = new BatchAnalysis(threads, depth, moveTime, megabytes, ordered);
+            long start = System.nanoTime();
+            long count;
+            PrintStream summary = output == null ? System.err : System.out;
+            Writer out = output == null ? new OutputStreamWriter(System.out) : Files.newBufferedWriter(Paths.get(output));
+            try {
+                count = batch.run(input, out);
+            }
+            finally {
+                // the console is only flushed, closing it would lose the messages after the results
+                if (output == null)
+                    out.flush();
+                else
+                    out.close();
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            summary.printf("%d positions in %.1f s on %d threads: %.1f positions/s, %.0f nodes/s%n", count, seconds, threads,
+                    count / seconds, batch.nodes / seconds);
+        }
+    }
+
+    // Node Class
+    static class Node {
+        Board state;        // the current state of the Node
+        Node parent;        // the parent of the node
+        String action;      // the action the node went
+        int pathCost;       // the pathCost
+
+        // the initial node set
+        public Node (Board state){
+            this.state = state;
+            this.parent = null;
+            action = "";
+            pathCost = 0;
+        }
+
+        // the deep copy node set
+        public Node (Board state, Node parent, String action, int cost){
+            this.state = state;
+            this.parent = parent;
+            this.action = action;
+            pathCost = cost;
+        }
+        public String toString(){
+            String ret = "Node Stats:\n";
+            ret += "Node State: \n" + state.toString();
+            if (parent == null)
+                ret += "\nNode Parent: null";
+            else
+                ret += "\nNode Parent: \n" + parent.state.toString();
+            ret += "\nNode action:\n"+action;
+            ret += "\nPath Cost: "+pathCost;
+            return ret;
+        }
+    }
+
+    // miniMax Algorithm class
+    static class algorithm4x4 {
+        static final int INFINITY = 10000;  // bigger than any score
+        static final int MAX_PLY = 40;      // more than the moves and passes of any 4x4 game
+        static final int PASS = -1;         // the move in the principal variation when a side has to pass
+
+        int ai;             // the index of the ai's color
+        int opponent;       // the index of the player's color
+        Node initialState;  // the initial state of the algorithm
+        BitBoard position;  // the one board the search makes and takes back all of its moves on
+        Solved4x4 solved;   // the value and best move of every position, null to search instead
+        long nodes;         // the number of nodes searched
+
+        int[][] pv = new int[MAX_PLY][MAX_PLY];    // pv[ply] is the best line of moves found from ply on
+        int[] pvLength = new int[MAX_PLY];         // where the line of pv[ply] ends
+
+        // Constructor class
+        public algorithm4x4(Node initialState){
+            this.initialState = initialState;
+            ai = initialState.state.botColor;
+            opponent = initialState.state.playerColor;
+            position = new BitBoard(initialState.state);
+        }
+
+        /** miniMaxSearch method
+         * - to find the correct move after searching the entire tree
+         * @param s the state that the program is currently in
+         * @param possibleMoves a set of all the possible moves the state can possibly move
+         * @return the value of the state for the ai: 1 for a win, 0 for a tie, -1 for a loss
+         * */
+        public int miniMaxSearch(Node s, Set<String> possibleMoves) {
+            position = new BitBoard(s.state);
+            nodes = 0;
+            // every position is already solved in the table, so there is nothing to search
+            int slot = solved != null ? solved.probe(position, ai) : -1;
+            if (slot >= 0){
+                pv[0][0] = solved.move(slot) < 0 ? PASS : solved.move(slot, position);
+                pvLength[0] = 1;
+                return Integer.signum(solved.value(slot));
+            }
+            // the 4x4 game is small enough to search to the end
+            return negamax(0, -INFINITY, INFINITY, ai);
+        }
+
+        /** bestMove method
+         * @return the first move of the principal variation, the move the search found
+         * */
+        public String bestMove (){
+            return pvLength[0] > 0 && pv[0][0] != PASS ? position.location(pv[0][0]) : "pass";
+        }
+
+        /** negamax method
+         * - finds the value of the position for color with alpha-beta pruning
+         * - the value for one side is minus the value for the other, so one method does both
+         * @param ply how many moves (and passes) the position is from the root
+         * @param alpha the score color is already sure of
+         * @param beta the score the opponent is already sure of
+         * @param color the color to move
+         * */
+        public int negamax (int ply, int alpha, int beta, int color){
+            nodes++;
+            pvLength[ply] = ply;
+            int other = (color+1)%2;
+            long moves = position.possibleMoves(color);
+            if (moves == 0){
+                // if neither side has any available moves, the game is over
+                if (position.possibleMoves(other) == 0)
+                    return utility(color);
+                // otherwise the other side moves again
+                int score = -negamax(ply+1, -beta, -alpha, other);
+                updatePV(ply, PASS);
+                return score;
+            }
+
+            int bestScore = -INFINITY;
+            // for every action in the possible moves the state can make
+            for (long m = moves; m != 0; m &= m - 1){
+                int a = Long.numberOfTrailingZeros(m);
+                long flipped = position.makeMove(a, color);
+                int score = -negamax(ply+1, -beta, -alpha, other);
+                position.unmakeMove(a, color, flipped);
+                if (score > bestScore){
+                    bestScore = score;
+                    if (score > alpha){
+                        alpha = score;
+                        updatePV(ply, a);
+                        if (alpha >= beta)
+                            break;
+                    }
+                }
+            }
+            return bestScore;
+        }
+
+        /** updatePV method
+         * - helper method for negamax
+         * - the best line from ply is the move, then the best line of the ply after it
+         * */
+        private void updatePV (int ply, int move){
+            pv[ply][ply] = move;
+            for (int i = ply+1; i < pvLength[ply+1]; i++)
+                pv[ply][i] = pv[ply+1][i];
+            pvLength[ply] = Math.max(pvLength[ply+1], ply+1);
+        }
+
+        /** utility method
+         * - to return a certain value for when a goal state is reached
+         * @param color the color the value is for
+         * @return 1 if color wins, -1 if color loses, 0 if it is a tie
+         * */
+        public int utility (int color) {
+            return Integer.signum(position.numSquares(color) - position.numSquares((color+1)%2));
+        }
+    }
+
+    // H-MiniMax w/a-B pruning Algorithm class
+    static class algorithm8x8{
+        static final int INFINITY = 30000;  // bigger than any score
+        static final int WIN = 20000;       // the score of a won game, plus the difference in pieces
+        static final int MAX_PLY = 128;     // more than the moves and passes of any game
+        static final int PASS = -1;         // the move in the principal variation when a side has to pass
+        static final int NO_CUT = Integer.MIN_VALUE;    // what probCut returns when it doesn't cut
+        static final int ASPIRATION = 40;   // half the width of the first window of an iteration, by default
+        static final int SYMMETRY_PIECES = 20;  // positions with this many pieces or less share table entries with their turns
+
+        // the order moves are tried in: the move from the table, the 2 killer moves, then the rest by
+        // how good the square is and then by the history of the square
+        static final int HASH_MOVE_SCORE = 1 << 30;
+        static final int KILLER_SCORE = 1 << 29;
+        static final int HISTORY_LIMIT = (1 << 20) - 1;
+        // how good each square is: corners first, then the edges and the middle, then the
+        // C-squares next to the corners, and the X-squares diagonal to the corners last
+        static final int[] SQUARE_PRIORITY = new int[]{
+                4, 1, 3, 3, 3, 3, 1, 4,
+                1, 0, 2, 2, 2, 2, 0, 1,
+                3, 2, 2, 2, 2, 2, 2, 3,
+                3, 2, 2, 2, 2, 2, 2, 3,
+                3, 2, 2, 2, 2, 2, 2, 3,
+                3, 2, 2, 2, 2, 2, 2, 3,
+                1, 0, 2, 2, 2, 2, 0, 1,
+                4, 1, 3, 3, 3, 3, 1, 4,
+        };
+
+        int ai;             // the index of the ai's color
+        int opponent;       // the index of the player's color
+        Node initialState;  // the initial state of the algorithm
+        BitBoard position;  // the one board the search makes and takes back all of its moves on
+        TranspositionTable table;   // the results of positions that were already searched, can be null
+        EndgameSolver endgame;      // solves the end of the game instead of searching it, can be null
+        PatternEval patterns;       // the evaluation function, null for the old one (discs, moves and corners)
+        ProbCut probCut;            // cuts subtrees that shallow searches say are outside the window, null for full-width
+        boolean inProbCut;          // true during the shallow searches, which don't cut themselves
+        boolean pvs;                // true to search the moves after the first one with a null window first
+        int aspiration;             // half the width of the window around the last iteration's score, 0 for none
+        boolean ageTable = true;    // false when a LazySMP search shares the table and ages it once itself
+        boolean symmetry;           // true to look positions with few pieces up in the table by their canonical form
+
+        int depthLimit;     // the desired depth of the algorithm
+        long rootMoves;     // the moves the search can choose from at the root
+        long nodes;         // the number of nodes searched
+        SearchStats stats = new SearchStats();  // what the last search did, for --stats and JMX
+
+        TimeControl clock;  // the clock of an iterative deepening search, null if there isn't one
+        BooleanSupplier stop;   // another reason to stop the search, null if there isn't one
+        boolean aborted;    // set when the clock runs out in the middle of a search
+        int completedDepth; // the deepest depth the iterative deepening search finished
+
+        int[][] pv = new int[MAX_PLY][MAX_PLY];    // pv[ply] is the best line of moves found from ply on
+        int[] pvLength = new int[MAX_PLY];         // where the line of pv[ply] ends
+        int[] bestLine = new int[0];               // the principal variation of the last finished search
+        int bestScore;                             // the score of the last finished search
+
+        int[][] killers = new int[MAX_PLY][2];     // the last 2 moves that failed high at each ply
+        int[][] history = new int[2][64];          // how often a move by each color failed high, weighted by depth
+        int[][] moveList = new int[MAX_PLY][64];   // the moves of each ply, sorted while they are searched
+        int[][] moveScore = new int[MAX_PLY][64];  // the ordering scores of those moves
+
+        // Constructor class
+        public algorithm8x8 (Node initialState, int depthLimit){
+            this(initialState, depthLimit, new TranspositionTable(option("hash", 64)));
+        }
+
+        // Constructor class with a transposition table that can be kept between moves
+        public algorithm8x8 (Node initialState, int depthLimit, TranspositionTable table){
+            this.initialState = initialState;
+            ai = initialState.state.botColor;
+            opponent = initialState.state.playerColor;
+            position = new BitBoard(initialState.state);
+            this.table = table;
+            this.depthLimit = depthLimit;
+            if (!"simple".equals(options.get("eval")))
+                patterns = PatternEval.standard();
+            probCut = ProbCut.standard();
+            pvs = !"off".equals(options.get("pvs"));
+            aspiration = option("aspiration", ASPIRATION);
+            symmetry = !"off".equals(options.get("symmetry"));
+        }
+
+        /** hAlphaBetaSearch method
+         * - to find the most correct move after searching the tree to the depth limit
+         * @param s the state that the program is currently in
+         * @param possibleMoves a set of all the possible moves the state can possibly move
+         * @return the score of the state for the ai
+         * */
+        public int hAlphaBetaSearch(Node s, Set<String> possibleMoves){
+            startSearch(s, possibleMoves);
+            int score = negamax(depthLimit, 0, -INFINITY, INFINITY, ai);
+            finishDepth(depthLimit, score);
+            stats.finish(nodes);
+            return score;
+        }
+
+        /** iterativeDeepening method
+         * - searches to a depth of 1, 2, 3... until the clock runs out or the depth limit is reached
+         * - every search puts its best move first in the transposition table, so the next one is faster
+         * @param s the state that the program is currently in
+         * @param possibleMoves a set of all the possible moves the state can possibly move
+         * @param clock the clock of the move, already started
+         * @return the score of the deepest search that finished
+         * */
+        public int iterativeDeepening(Node s, Set<String> possibleMoves, TimeControl clock){
+            return iterativeDeepening(s, possibleMoves, clock, 1);
+        }
+
+        /** iterativeDeepening method
+         * @param s the state that the program is currently in
+         * @param possibleMoves a set of all the possible moves the state can possibly move
+         * @param clock the clock of the move, already started
+         * @param startDepth the first depth to search
+         * @return the score of the deepest search that finished
+         * */
+        public int iterativeDeepening(Node s, Set<String> possibleMoves, TimeControl clock, int startDepth){
+            startSearch(s, possibleMoves);
+            this.clock = clock;
+            int empty = Long.bitCount(position.empty());
+
+            // if the clock runs out before the first search finishes, any legal move is better than nothing
+            bestLine = rootMoves == 0 ? new int[]{PASS} : new int[]{Long.numberOfTrailingZeros(rootMoves)};
+            bestScore = 0;
+            completedDepth = 0;
+            int emptySquares = s.state.numSquares(s.state.board, " ");
+            if (endgame != null && endgame.solves(emptySquares)){
+                // near the end of the game the result is found exactly instead of with the evaluation function
+                // (if the clock runs out first, the search below still finds a move with the time that's left)
+                int result = endgame.solve(position, ai, emptySquares <= endgame.exactEmpties, clock);
+                nodes += endgame.nodes;
+                if (!endgame.aborted){
+                    bestLine = new int[]{endgame.bestMove < 0 ? PASS : endgame.bestMove};
+                    bestScore = result > 0 ? WIN + result : result < 0 ? -WIN + result : 0;
+                    completedDepth = emptySquares;
+                    stats.iteration(emptySquares, nodes);
+                    stats.finish(nodes);
+                    this.clock = null;
+                    return bestScore;
+                }
+            }
+            int[] scores = new int[depthLimit + 1];     // the score of every depth that finished
+            for (int depth = startDepth; depth <= depthLimit; depth++){
+                // odd and even depths score a position differently (the side that moves last gains), so the window
+                // is around the score of the depth before the last one
+                int score = depth - 2 >= startDepth ? aspirationSearch(depth, scores[depth-2])
+                        : negamax(depth, 0, -INFINITY, INFINITY, ai);
+                // a search that was stopped halfway is thrown away
+                if (aborted)
+                    break;
+                scores[depth] = score;
+                finishDepth(depth, score);
+                // stop if the search already goes to the end of the game, or if the next depth won't finish
+                if (depth >= empty || !clock.startNextDepth())
+                    break;
+            }
+            stats.finish(nodes);
+            this.clock = null;
+            return bestScore;
+        }
+
+        /** aspirationSearch method
+         * - helper method for iterativeDeepening
+         * - searches with a small window around the score it expects, which cuts more, and if the score falls
+         *   outside it, searches again with the window twice as wide on that side
+         * @param depth the depth to search
+         * @param guess the score it expects
+         * @return the score, 0 if the search was stopped
+         * */
+        private int aspirationSearch (int depth, int guess){
+            if (aspiration <= 0 || Math.abs(guess) >= WIN / 2)
+                return negamax(depth, 0, -INFINITY, INFINITY, ai);
+            int delta = aspiration;
+            int alpha = guess - delta, beta = guess + delta;
+            while (true){
+                int score = negamax(depth, 0, alpha, beta, ai);
+                if (aborted)
+                    return 0;
+                if (score <= alpha && alpha > -INFINITY){
+                    delta *= 2;
+                    alpha = score - delta <= -WIN / 2 ? -INFINITY : score - delta;
+                }
+                else if (score >= beta && beta < INFINITY){
+                    delta *= 2;
+                    beta = score + delta >= WIN / 2 ? INFINITY : score + delta;
+                }
+                else
+                    return score;
+            }
+        }
+
+        /** startSearch method
+         * - helper method for the searches
+         * - sets up the board and the counters
+         * */
+        private void startSearch (Node s, Set<String> possibleMoves){
+            position = new BitBoard(s.state);
+            if (patterns != null)
+                position.enableFeatures();
+            nodes = 0;
+            stats.start();
+            aborted = false;
+            if (ageTable && table != null)
+                table.newSearch();
+            // the killers are for positions of the last search, the history is only made less important
+            for (int[] k : killers)
+                Arrays.fill(k, -1);
+            for (int[] h : history){
+                for (int i = 0; i < h.length; i++)
+                    h[i] >>= 1;
+            }
+            rootMoves = 0;
+            for (String a : possibleMoves)
+                rootMoves |= 1L << position.square(a);
+        }
+
+        /** finishDepth method
+         * - helper method for the searches
+         * - keeps the result of a search that wasn't stopped
+         * */
+        private void finishDepth (int depth, int score){
+            stats.iteration(depth, nodes);
+            completedDepth = depth;
+            bestScore = score;
+            bestLine = Arrays.copyOf(pv[0], pvLength[0]);
+        }
+
+        /** bestMove method
+         * @return the first move of the principal variation, the move the search found
+         * */
+        public String bestMove (){
+            return bestLine.length > 0 && bestLine[0] != PASS ? position.location(bestLine[0]) : "pass";
+        }
+
+        /** checkClock method
+         * - helper method for negamax
+         * - looks at the clock every 1024 nodes, since reading the time isn't free
+         * @return true if the search has to stop
+         * */
+        private boolean checkClock (){
+            if ((nodes & 1023) == 0 && ((clock != null && clock.timeUp()) || (stop != null && stop.getAsBoolean())))
+                aborted = true;
+            return aborted;
+        }
+
+        /** searchPosition method
+         * - searches a board with any window, for other searches that use this one for their subtrees
+         * @param b the board to search, it is copied
+         * @param depth how many moves to search
+         * @param alpha the score color is already sure of
+         * @param beta the score the opponent is already sure of
+         * @param color the color to move
+         * @return the score of the board for color
+         * */
+        public int searchPosition (BitBoard b, int depth, int alpha, int beta, int color){
+            position.copyFrom(b);
+            if (patterns != null && position.features == null)
+                position.enableFeatures();
+            for (int[] k : killers)
+                Arrays.fill(k, -1);
+            aborted = false;
+            return negamax(depth, 0, alpha, beta, color);
+        }
+
+        /** negamax method
+         * - finds the value of the position for color with alpha-beta pruning
+         * - the value for one side is minus the value for the other, so one method does both
+         * @param depth how many more moves to search before using the evaluation function
+         * @param ply how many moves (and passes) the position is from the root
+         * @param alpha the score color is already sure of
+         * @param beta the score the opponent is already sure of
+         * @param color the color to move
+         * @return the score of the position for color
+         * */
+        public int negamax (int depth, int ply, int alpha, int beta, int color){
+            nodes++;
+            pvLength[ply] = ply;
+            if (checkClock())
+                return 0;
+
+            int other = (color+1)%2;
+            long moves = position.possibleMoves(color);
+            if (ply == 0)
+                moves &= rootMoves;
+            if (moves == 0 && position.possibleMoves(other) == 0)
+                return finalScore(color);
+            // if the search is at its cutoff point, then return the evaluation function
+            if (depth <= 0 || ply >= MAX_PLY-1){
+                stats.leafEvaluations++;
+                return eval(color);
+            }
+            // if color has to pass, the other side moves again
+            if (moves == 0){
+                int score = -negamax(depth, ply+1, -beta, -alpha, other);
+                updatePV(ply, PASS);
+                return score;
+            }
+
+            // if the position was already searched deep enough, use that score (except at the root, which needs a move)
+            long key = position.key(color);
+            int turn = 0;
+            if (symmetry && table != null && Long.bitCount(position.black | position.white) <= SYMMETRY_PIECES){
+                // in the opening a position is often a turn of another one, so they are stored as their canonical
+                // form, with the move turned the same way
+                turn = Symmetry.canonical(position.black, position.white, 8);
+                if (turn != 0)
+                    key = BitBoard.computeHash(Symmetry.transform(position.black, turn, 8),
+                            Symmetry.transform(position.white, turn, 8)) ^ (key ^ position.hash);
+            }
+            long entry = 0;
+            if (table != null){
+                entry = table.probe(key);
+                stats.tableProbes++;
+                if (entry != 0)
+                    stats.tableHits++;
+            }
+            int hashMove = entry != 0 ? Symmetry.inverse(TranspositionTable.move(entry), turn, 8) : -1;
+            if (entry != 0 && ply > 0 && TranspositionTable.depth(entry) >= depth){
+                int score = TranspositionTable.score(entry);
+                int bound = TranspositionTable.bound(entry);
+                if (bound == TranspositionTable.EXACT || (bound == TranspositionTable.LOWER && score >= beta)
+                        || (bound == TranspositionTable.UPPER && score <= alpha))
+                    return score;
+            }
+            if (probCut != null && !inProbCut && ply > 0 && depth >= ProbCut.MIN_DEPTH && depth <= ProbCut.MAX_DEPTH
+                    && Long.bitCount(position.empty()) > depth){
+                int cut = probCut(depth, ply, alpha, beta, color);
+                if (aborted)
+                    return 0;
+                if (cut != NO_CUT)
+                    return cut;
+            }
+
+            int alphaStart = alpha;
+            int bestScore = -INFINITY;
+            int best = -1;
+            // for every action in the possible moves the state can make, best looking first
+            int n = orderMoves(moves, ply, color, hashMove);
+            for (int i = 0; i < n; i++){
+                int a = nextMove(ply, i, n);
+                long flipped = position.makeMove(a, color);
+                int score;
+                if (i == 0 || !pvs)
+                    score = -negamax(depth-1, ply+1, -beta, -alpha, other);
+                else {
+                    // the first move is very likely the best, so the others only have to be shown to be worse, with
+                    // a null window, and only one that turns out better is searched again with the whole window
+                    score = -negamax(depth-1, ply+1, -alpha-1, -alpha, other);
+                    if (score > alpha && score < beta && !aborted)
+                        score = -negamax(depth-1, ply+1, -beta, -alpha, other);
+                }
+                position.unmakeMove(a, color, flipped);
+                if (aborted)
+                    return 0;
+                if (score > bestScore){
+                    bestScore = score;
+                    best = a;
+                    if (score > alpha){
+                        alpha = score;
+                        updatePV(ply, a);
+                        // if the score is getting bigger than beta, the opponent won't let the game get here
+                        if (alpha >= beta){
+                            updateOrdering(ply, color, depth, a);
+                            stats.betaCutoffs++;
+                            if (i == 0)
+                                stats.firstMoveCutoffs++;
+                            break;
+                        }
+                    }
+                }
+            }
+
+            int bound = bestScore >= beta ? TranspositionTable.LOWER
+                    : bestScore <= alphaStart ? TranspositionTable.UPPER : TranspositionTable.EXACT;
+            if (table != null)
+                table.store(key, depth, bound, bestScore, Symmetry.square(best, turn, 8));
+            return bestScore;
+        }
+
+        /** probCut method
+         * - helper method for negamax
+         * - the shallow searches of the depth, the cheaper one first, with a null window at the shallow score that
+         *   predicts a deep score t sigmas past beta, and then past alpha: if the shallow search gets past it, the
+         *   deep search very likely would have too
+         * @return beta or alpha if the subtree is cut, NO_CUT otherwise
+         * */
+        private int probCut (int depth, int ply, int alpha, int beta, int color){
+            int phase = PatternEval.phase(position);
+            int ret = NO_CUT;
+            inProbCut = true;
+            for (int check = 0; check < ProbCut.CHECKS && ret == NO_CUT && !aborted; check++){
+                int shallow = probCut.shallow[phase][depth][check];
+                if (shallow <= 0)
+                    continue;
+                double a = probCut.a[phase][depth][check], b = probCut.b[phase][depth][check];
+                double margin = probCut.t * probCut.sigma[phase][depth][check];
+                // won and lost scores aren't predicted, so windows near them aren't cut
+                if (beta < WIN / 2){
+                    int high = (int) Math.ceil((beta + margin - b) / a);
+                    if (high < WIN / 2 && negamax(shallow, ply, high-1, high, color) >= high)
+                        ret = beta;
+                }
+                if (ret == NO_CUT && alpha > -WIN / 2 && !aborted){
+                    int low = (int) Math.floor((alpha - margin - b) / a);
+                    if (low > -WIN / 2 && negamax(shallow, ply, low, low+1, color) <= low)
+                        ret = alpha;
+                }
+            }
+            inProbCut = false;
+            if (ret != NO_CUT)
+                stats.probCuts++;
+            // the shallow searches wrote their own lines here
+            pvLength[ply] = ply;
+            return ret;
+        }
+
+        /** updatePV method
+         * - helper method for negamax
+         * - the best line from ply is the move, then the best line of the ply after it
+         * */
+        private void updatePV (int ply, int move){
+            pv[ply][ply] = move;
+            for (int i = ply+1; i < pvLength[ply+1]; i++)
+                pv[ply][i] = pv[ply+1][i];
+            pvLength[ply] = Math.max(pvLength[ply+1], ply+1);
+        }
+
+        /** orderMoves method
+         * - helper method for negamax
+         * - puts the moves of a ply in moveList[ply] and their ordering scores in moveScore[ply]
+         * @param moves the bitboard of the moves
+         * @param ply the ply of the moves
+         * @param color the color to move
+         * @param hashMove the move from the transposition table, or -1
+         * @return the number of moves
+         * */
+        private int orderMoves (long moves, int ply, int color, int hashMove){
+            int[] list = moveList[ply];
+            int[] scores = moveScore[ply];
+            int n = 0;
+            for (long m = moves; m != 0; m &= m - 1){
+                int a = Long.numberOfTrailingZeros(m);
+                int score;
+                if (a == hashMove)
+                    score = HASH_MOVE_SCORE;
+                else if (a == killers[ply][0])
+                    score = KILLER_SCORE;
+                else if (a == killers[ply][1])
+                    score = KILLER_SCORE - 1;
+                else
+                    score = (SQUARE_PRIORITY[a] << 20) + Math.min(history[color][a], HISTORY_LIMIT);
+                list[n] = a;
+                scores[n] = score;
+                n++;
+            }
+            return n;
+        }
+
+        /** nextMove method
+         * - helper method for negamax
+         * - selection sort one step at a time: swaps the best of the moves from i on into i, so moves
+         *   after a cutoff are never sorted
+         * @return the move at i
+         * */
+        private int nextMove (int ply, int i, int n){
+            int[] list = moveList[ply];
+            int[] scores = moveScore[ply];
+            int best = i;
+            for (int j = i+1; j < n; j++){
+                if (scores[j] > scores[best])
+                    best = j;
+            }
+            int move = list[best];
+            int score = scores[best];
+            list[best] = list[i];
+            scores[best] = scores[i];
+            list[i] = move;
+            scores[i] = score;
+            return move;
+        }
+
+        /** updateOrdering method
+         * - helper method for negamax
+         * - remembers a move that failed high as a killer of its ply and in the history
+         * */
+        private void updateOrdering (int ply, int color, int depth, int move){
+            if (killers[ply][0] != move){
+                killers[ply][1] = killers[ply][0];
+                killers[ply][0] = move;
+            }
+            history[color][move] += depth*depth;
+        }
+
+        /** staticOrder method
+         * - puts moves in order of SQUARE_PRIORITY only, for searches that need the same order every time
+         * @param moves the bitboard of the moves
+         * @param list the array to put the squares in
+         * @return the number of moves
+         * */
+        public static int staticOrder (long moves, int[] list){
+            int n = BitBoard.moveList(moves, list);
+            // insertion sort, it keeps squares of the same priority in order
+            for (int i = 1; i < n; i++){
+                int move = list[i];
+                int j = i - 1;
+                while (j >= 0 && SQUARE_PRIORITY[list[j]] < SQUARE_PRIORITY[move]){
+                    list[j+1] = list[j];
+                    j--;
+                }
+                list[j+1] = move;
+            }
+            return n;
+        }
+
+        /** finalScore method
+         * - the score of a game that is over, always better or worse than any evaluation
+         * @param color the color the score is for
+         * */
+        public int finalScore (int color){
+            int difference = position.numSquares(color) - position.numSquares((color+1)%2);
+            if (difference > 0)
+                return WIN + difference;
+            if (difference < 0)
+                return -WIN + difference;
+            return 0;
+        }
+
+        /** eval method
+         * - to give a reasonable heuristic function to determine what the best move is
+         * - the score of color minus the score of the other color, so it works with negamax
+         * - with patterns it is a lookup of every pattern on the board, otherwise it counts the pieces,
+         *   moves and corners of both sides
+         * @param color the color to move
+         * */
+        public int eval (int color) {
+            if (patterns != null)
+                return patterns.eval(position, color);
+            return evalSide(color) - evalSide((color+1)%2);
+        }
+
+        /** evalSide method
+         * - helper method for eval
+         * @param color the color the pieces are counted for
+         * */
+        private int evalSide (int color){
+            /* Weighting is based on 3 things:
+            * - discCount : 1
+            * - amount of legal moves : 100
+            * - corner piece count : 1000
+            * */
+            int discCount = position.numSquares(color);
+            int legalMoves = Long.bitCount(position.possibleMoves(color));
+            int cornerSquareCount = Long.bitCount(position.discs(color) & position.corners());
+
+            //weighting
+            int ret = 0;
+            ret += discCount;
+            ret += (legalMoves*100);
+            ret += (cornerSquareCount*1000);
+            return ret;
+        }
+    }
+
+    public static void run4x4(boolean black) {
+        int cP;
+        if (black)
+            cP = 0;
+        else
+            cP = 1;
+        Board b = new Board(cP, (cP + 1) % 2, false);
+        Node state = new Node(b);
+        System.out.println(state.state);
+        System.out.println("Possible Moves: " + state.state.possibleMoves(state.state, b.currentPlayer).keySet());
+        Scanner in = new Scanner(System.in);
+        String[] pieces = new String[]{"B", "W"};
+        // the bot looks its moves up in the solved game, or searches them if the table can't be used
+        Solved4x4 solved = null;
+        try {
+            solved = Solved4x4.load(Paths.get(options.getOrDefault("table4x4", TABLE_4X4)));
+        }
+        catch (IOException e){
+            System.out.println("Could not use the 4x4 table, searching instead: " + e.getMessage());
+        }
+        System.out.println("Enter a move: (q to quit)");
+        String move = in.next();
+        try {
+            if (move.equalsIgnoreCase("q")) {
+                System.out.println("Ending program");
                 throw new ArrayIndexOutOfBoundsException();
             } else {
                 b = new Board(b.move(b, move, b.currentPlayer).board, b.currentPlayer, b.botColor);
@@ -862,10 +6716,11 @@ public class ReversiAI {
                         try {
                             System.out.println(state.state);
                             algorithm4x4 aiTurn = new algorithm4x4(state);
-                            String aiMove = aiTurn.miniMaxSearch(aiTurn.initialState, b.possibleMoves(b, b.currentPlayer).keySet());
-                            String[] ai = aiMove.split(",");
-                            System.out.println("AI Move: " + ai[1]);
-                            b = new Board(b.move(b, ai[1], b.currentPlayer).board, b.currentPlayer, b.botColor);
+                            aiTurn.solved = solved;
+                            aiTurn.miniMaxSearch(aiTurn.initialState, b.possibleMoves(b, b.currentPlayer).keySet());
+                            String aiMove = aiTurn.bestMove();
+                            System.out.println("AI Move: " + aiMove);
+                            b = new Board(b.move(b, aiMove, b.currentPlayer).board, b.currentPlayer, b.botColor);
                             state = new Node(b, state, state.action, state.pathCost);
                             b.currentPlayer = (b.currentPlayer + 1) % 2;
                         } catch (StackOverflowError e) {
@@ -897,8 +6752,35 @@ public class ReversiAI {
         System.out.println(state.state.possibleMoves(state.state, b.currentPlayer).keySet());
         Scanner in  = new Scanner(System.in);
         String[] pieces = new String[]{"B", "W"};
+        TranspositionTable table = new TranspositionTable(option("hash", 64));    // kept for the whole game
+        // a game clock if --clock is given, otherwise a fixed time for every move
+        TimeControl clock = options.containsKey("clock") ? new TimeControl(option("clock", 0), option("inc", 0))
+                : new TimeControl(option("movetime", 5000));
+        // more than one thread searches with Lazy SMP, or with Young Brothers Wait if --ybw is given
+        LazySMP smp = option("threads", 1) > 1 && !options.containsKey("ybw") ? new LazySMP(option("threads", 1), table) : null;
+        YBWSearch ybw = options.containsKey("ybw") ? new YBWSearch(option("threads", 1), option("split", 4)) : null;
+        // the last empty squares are solved instead of searched, --endgame 0 turns it off
+        EndgameSolver endgame = new EndgameSolver(option("hash", 64), option("endgame", 20),
+                Math.min(option("endgame", 20), option("exact", 16)));
+        // the first moves come from the opening book if there is one (--book none turns it off)
+        OpeningBook book = null;
+        try {
+            book = OpeningBook.load(Paths.get(options.getOrDefault("book", BOOK)));
+        }
+        catch (IOException e){
+            System.out.println("Could not load the opening book: " + e.getMessage());
+        }
+        SearchStats.register();
+        // with --ponder the bot searches the move it expects from the player while the player thinks
+        Ponder ponder = null;
+        int ponderHits = 0, ponderMisses = 0;
+        // the moves of the game, for --record
+        byte[] moves = new byte[128];
+        int plies = 0;
         System.out.println("Enter a move: ");
         String move = in.next();
+        if (GameRecord.square(move) >= 0)
+            moves[plies++] = (byte) GameRecord.square(move);
         b = new Board(b.move(b, move, b.currentPlayer).board, b.currentPlayer, b.botColor);
         state = new Node(b, state, state.action, state.pathCost);
         b.currentPlayer = (b.currentPlayer+1)%2;
@@ -909,43 +6791,181 @@ public class ReversiAI {
                 if (b.possibleMoves(b, b.currentPlayer).keySet().size() != 0) {
                     System.out.println(state.state.possibleMoves(state.state, b.currentPlayer).keySet());
                     move = in.next();
+                    if (GameRecord.square(move) >= 0 && plies < moves.length)
+                        moves[plies++] = (byte) GameRecord.square(move);
+                    if (ponder != null && !move.equals(ponder.predicted)){
+                        stopPonder(ponder);
+                        ponder = null;
+                        ponderMisses++;
+                    }
                     b = new Board(b.move(b, move, b.currentPlayer).board, b.currentPlayer, b.botColor);
                     state = new Node(b, state, state.action, state.pathCost);
                     b.currentPlayer = (b.currentPlayer+1)%2;
                 }
                 else {
-                    System.out.println(pieces[b.currentPlayer++%2]+ " is out of moves!!");
+                    System.out.println(pieces[b.currentPlayer%2]+ " is out of moves!!");
+                    b.currentPlayer = (b.currentPlayer+1)%2;
                     Board temp = new Board(b.board,b.currentPlayer%2, b.botColor);
                     if (temp.possibleMoves(b, b.currentPlayer).keySet().size() == 0){
                         System.out.println(pieces[b.currentPlayer%2] +" is out of moves!!");
                         break;
                     }
+                    if (plies < moves.length)
+                        moves[plies++] = (byte) GameRecord.PASS;
+                }
+            }
+            else if (b.possibleMoves(b, b.currentPlayer).keySet().size() == 0){
+                // the bot passes if the player can move, otherwise the player's move ended the game
+                if (ponder != null){
+                    stopPonder(ponder);
+                    ponder = null;
                 }
+                System.out.println(pieces[b.currentPlayer%2] + " is out of moves!!");
+                if (b.possibleMoves(b, b.playerColor).keySet().size() == 0)
+                    break;
+                if (plies < moves.length)
+                    moves[plies++] = (byte) GameRecord.PASS;
+                b.currentPlayer = b.playerColor;
             }
             else {
                 try {
                     System.out.println(state.state);
-                    algorithm8x8 aiTurn = new algorithm8x8(state, 12);
-                    String aiMove = aiTurn.hAlphaBetaSearch(aiTurn.initialState, b.possibleMoves(b, b.currentPlayer).keySet());
-                    String[] ai = aiMove.split(",");
-                    System.out.println(ai[1]);
-                    b = new Board(b.move(b, ai[1], b.currentPlayer).board, b.currentPlayer, b.botColor);
+                    algorithm8x8 aiTurn = new algorithm8x8(state, option("depth", 60), table);
+                    aiTurn.endgame = endgame;
+                    clock.startMove(b.numSquares(b.board, " "));
+                    String aiMove;
+                    SearchStats stats;
+                    int[] line = new int[0];    // the principal variation, to guess the player's next move from
+                    int bookMove = book != null ? book.probe(new BitBoard(b), b.currentPlayer) : -1;
+                    if (ponder != null && bookMove >= 0){
+                        // a hit, but the book has the position, so its move is played the same as without pondering
+                        stopPonder(ponder);
+                        ponder = null;
+                        ponderHits++;
+                    }
+                    if (ponder != null){
+                        // the player made the move the bot was pondering on, its search goes on with this move's clock
+                        aiTurn = ponder.hit();
+                        ponder = null;
+                        ponderHits++;
+                        aiMove = aiTurn.bestMove();
+                        stats = aiTurn.stats;
+                        line = aiTurn.bestLine;
+                    }
+                    else if (bookMove >= 0){
+                        aiMove = BitBoard.COLUMNS[bookMove % 8] + BitBoard.ROWS[bookMove / 8];
+                        stats = null;
+                    }
+                    else if (endgame.solves(b.numSquares(b.board, " "))){
+                        aiTurn.iterativeDeepening(aiTurn.initialState, b.possibleMoves(b, b.currentPlayer).keySet(), clock);
+                        aiMove = aiTurn.bestMove();
+                        stats = aiTurn.stats;
+                        line = aiTurn.bestLine;
+                    }
+                    else if (ybw != null){
+                        ybw.iterativeDeepening(state, option("depth", 60), clock);
+                        aiMove = ybw.bestMove();
+                        stats = ybw.stats;
+                    }
+                    else if (smp != null){
+                        smp.search(state, b.possibleMoves(b, b.currentPlayer).keySet(), option("depth", 60), clock);
+                        aiMove = smp.main.bestMove();
+                        stats = smp.main.stats;
+                        line = smp.main.bestLine;
+                    }
+                    else {
+                        aiTurn.iterativeDeepening(aiTurn.initialState, b.possibleMoves(b, b.currentPlayer).keySet(), clock);
+                        aiMove = aiTurn.bestMove();
+                        stats = aiTurn.stats;
+                        line = aiTurn.bestLine;
+                    }
+                    clock.finishMove();
+                    if (stats != null){
+                        SearchStats.publish(stats);
+                        if (options.containsKey("stats"))
+                            printStats(stats);
+                    }
+                    System.out.println(aiMove);
+                    if (plies < moves.length)
+                        moves[plies++] = (byte) GameRecord.square(aiMove);
+                    b = new Board(b.move(b, aiMove, b.currentPlayer).board, b.currentPlayer, b.botColor);
                     state = new Node(b, state, state.action, state.pathCost);
                     b.currentPlayer = (b.currentPlayer + 1) % 2;
+                    // the player's expected reply is the second move of the principal variation
+                    if (options.containsKey("ponder") && line.length >= 2 && line[1] != algorithm8x8.PASS)
+                        ponder = new Ponder(state, BitBoard.COLUMNS[line[1] % 8] + BitBoard.ROWS[line[1] / 8], table,
+                                endgame, smp, clock, option("depth", 60));
                 }
                 catch (StackOverflowError e){
                     e.printStackTrace();
                     break;
                 }
+                catch (InterruptedException e){
+                    Thread.currentThread().interrupt();
+                    break;
+                }
             }
         }
+        if (ponder != null)
+            stopPonder(ponder);
+        if (options.containsKey("ponder"))
+            System.out.println("Ponder hits: " + ponderHits + ", misses: " + ponderMisses);
+        if (smp != null)
+            smp.shutdown();
+        if (ybw != null)
+            ybw.shutdown();
+        GameRecord.record(new BitBoard(true), cP, moves, plies, new BitBoard(b),
+                b.botColor == 0 ? GameRecord.BLACK_ENGINE : GameRecord.WHITE_ENGINE);
         if (b.numSquares(b.board, "B")>b.numSquares(b.board, "W"))
             System.out.println("Black wins!");
         else
             System.out.println("White wins!");
     }
 
+    /** stopPonder method
+     * - helper method for run8x8
+     * - stops a search on the player's time that guessed the wrong move
+     * */
+    static void stopPonder (Ponder ponder){
+        try {
+            ponder.miss();
+        }
+        catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** printStats method
+     * - writes the stats of a bot move as a JSON line, to the file given with --stats or to the console
+     * */
+    static void printStats (SearchStats stats){
+        String file = options.get("stats");
+        if (file.isEmpty()){
+            System.out.println(stats.toJson());
+            return;
+        }
+        try {
+            Files.writeString(Paths.get(file), stats.toJson() + System.lineSeparator(), StandardOpenOption.CREATE,
+                    StandardOpenOption.APPEND);
+        }
+        catch (IOException e){
+            System.out.println("Could not write the stats: " + e.getMessage());
+        }
+    }
+
     public static void main(String[] args) {
+        // the options come after the name, such as "--hash 64", or without a name to run a tool
+        int first = args.length > 0 && args[0].startsWith("--") ? 0 : 1;
+        for (int i = first; i < args.length; i++){
+            if (args[i].startsWith("--")){
+                boolean hasValue = i+1 < args.length && !args[i+1].startsWith("--");
+                options.put(args[i].substring(2), hasValue ? args[++i] : "");
+            }
+        }
+        if (first == 0){
+            runTool();
+            return;
+        }
         System.out.println("HELLO " + args[0]+"!!!!!");
         System.out.println("Reversi/Othello by Cole Goodman");
         Scanner in = new Scanner(System.in);